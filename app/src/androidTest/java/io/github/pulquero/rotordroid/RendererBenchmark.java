@@ -0,0 +1,78 @@
+package io.github.pulquero.rotordroid;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Build;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.androidplot.xy.BoundaryMode;
+import com.androidplot.xy.FastLineAndPointRenderer;
+import com.androidplot.xy.LineAndPointFormatter;
+import com.androidplot.xy.XYPlot;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * Compares frame render time and allocations of {@link IntXYSeriesRenderer} against {@link FastLineAndPointRenderer}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RendererBenchmark {
+    private static final String TAG = "RendererBenchmark";
+    private static final int NUM_SERIES = 4;
+    private static final int NUM_POINTS = 400;
+    private static final int WARMUP_FRAMES = 50;
+    private static final int FRAMES = 500;
+
+    @Test
+    public void compareRenderers() {
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+            long[] fast = render(ctx, false);
+            long[] primitive = render(ctx, true);
+            Log.i(TAG, String.format("FastLineAndPointRenderer: %d us/frame, %d bytes/frame", fast[0], fast[1]));
+            Log.i(TAG, String.format("IntXYSeriesRenderer: %d us/frame, %d bytes/frame", primitive[0], primitive[1]));
+            assertTrue(primitive[1] < fast[1]);
+        });
+    }
+
+    private static long[] render(Context ctx, boolean primitive) {
+        XYPlot plot = new XYPlot(ctx, "benchmark");
+        plot.setDomainBoundaries(0, NUM_POINTS, BoundaryMode.FIXED);
+        plot.setRangeBoundaries(0, 150, BoundaryMode.FIXED);
+        for (int s=0; s<NUM_SERIES; s++) {
+            CircularXYSeries series = new CircularXYSeries("s" + s, NUM_POINTS);
+            for (int i=0; i<NUM_POINTS + NUM_POINTS/2; i++) {
+                series.add(i - NUM_POINTS/2, (i*7 + s*31) % 150);
+            }
+            LineAndPointFormatter formatter = primitive
+                    ? new IntXYSeriesRenderer.Formatter(0xFF00AA00)
+                    : new FastLineAndPointRenderer.Formatter(0xFF00AA00, null, null);
+            plot.addSeries(series, formatter);
+        }
+        plot.layout(0, 0, 1280, 800);
+        Bitmap bitmap = Bitmap.createBitmap(1280, 800, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        for (int i=0; i<WARMUP_FRAMES; i++) {
+            plot.draw(canvas);
+        }
+        long startBytes = Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+        long startTime = System.nanoTime();
+        for (int i=0; i<FRAMES; i++) {
+            plot.draw(canvas);
+        }
+        long endTime = System.nanoTime();
+        long endBytes = Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+        bitmap.recycle();
+        return new long[] {(endTime - startTime)/1000L/FRAMES, (endBytes - startBytes)/FRAMES};
+    }
+}
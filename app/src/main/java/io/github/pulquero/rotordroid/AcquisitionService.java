@@ -0,0 +1,719 @@
+package io.github.pulquero.rotordroid;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the nodes, acquisition, buffering and recording, so they outlive the activity.
+ * Activities bind to it, show the buffers of the current mode straight away and follow them through a {@link UiListener}.
+ * Runs in the foreground while started, so sampling carries on without gaps when no activity is shown.
+ * Methods are called from the UI thread unless stated otherwise.
+ */
+public final class AcquisitionService extends Service {
+    public static final int MODE_SCAN = 0;
+    public static final int MODE_SIGNAL = 1;
+    public static final int MODE_CHANNELS = 2;
+    public static final int MODE_COMPARE = 3;
+    /** Selectable in {@link #MODE_CHANNELS}, in the order of R.array.channel_plans. */
+    static final ChannelPlan[] CHANNEL_PLANS = {
+            ChannelPlan.RACEBAND.withGaps(),
+            ChannelPlan.FATSHARK.withGaps(),
+            ChannelPlan.BOSCAM_A.withGaps(),
+            ChannelPlan.BOSCAM_B.withGaps(),
+            ChannelPlan.BOSCAM_E.withGaps()
+    };
+    /** Selectable in {@link #MODE_CHANNELS}, in the order of R.array.channel_dwells. */
+    static final long[] CHANNEL_DWELLS_MS = {10L, ChannelScan.DWELL_MS, 50L, 100L};
+    static final int MIN_FREQ = 5645;
+    static final int MAX_FREQ = 5945;
+    static final int MAX_RSSI = 150;
+    static final int NUM_SAMPLES = 200;
+    private static final String TAG = "AcquisitionService";
+    private static final String CHANNEL_ID = "acquisition";
+    private static final int NOTIFICATION_ID = 1;
+    private static final int STREAM_PORT = 5761;
+    /** As fast as the link allows. */
+    private static final long SIGNAL_SAMPLE_PERIOD = 0L;
+    private static final int MAX_UI_BACKLOG = 32;
+    private static final int ENTER_AT = 90;
+    private static final int EXIT_AT = 80;
+    private static final int MIN_LAP_MILLIS = 3000;
+    private static final int WATERFALL_ROWS = 300;
+    private static final int STATS_WINDOW_SWEEPS = 20;
+    /** A bin can be sampled by both the coarse and fine pass of a sweep. */
+    private static final int SAMPLES_PER_SWEEP = 2;
+    private static final int MERGE_CAPACITY = 1024;
+    /** How far a node can lag before the others are shown without it. */
+    private static final int MAX_MERGE_SKEW_MS = 500;
+
+    /**
+     * Called from the lanes of the nodes.
+     */
+    interface UiListener {
+        void onFrequency(int freq);
+
+        /**
+         * The sample of the selected node is held until {@link #onFollowed()} is called.
+         */
+        void onFollowTime(int time);
+
+        void onMessage(String msg);
+
+        void onSweep();
+
+        /**
+         * The buffers of the current mode have been replaced, once they could be sized to the nodes.
+         */
+        void onBuffersChanged();
+    }
+
+    interface NodesTask {
+        void run(NodeManager nodes);
+    }
+
+    final class LocalBinder extends Binder {
+        AcquisitionService getService() {
+            return AcquisitionService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final int selectedNode = 0;
+    private ScheduledExecutorService executor;
+    private Future<NodeManager> fNodes;
+    private SessionRecorder recorder;
+    private volatile StreamServer streamServer;
+    private volatile boolean streaming;
+    private SessionReader replay;
+    private ConnectionManager connection;
+    private volatile UiListener uiListener;
+    private volatile SampleScheduler sampler;
+    private volatile LapDetector[] lapDetectors;
+    /** Samples of the selected node not yet followed by the UI. */
+    private final AtomicInteger heldSamples = new AtomicInteger();
+    private int mode = -1;
+    private ChannelPlan channelPlan = CHANNEL_PLANS[0];
+    private long channelDwellMs = ChannelScan.DWELL_MS;
+
+    // buffers of the current mode, only written from the lanes
+    private volatile FixedXYSeries spectrumSeries;
+    private volatile FixedXYSeries minSeries;
+    private volatile FixedXYSeries maxSeries;
+    private volatile FixedXYSeries meanSeries;
+    private volatile FixedXYSeries p95Series;
+    private volatile Waterfall waterfall;
+    private volatile TieredXYSeries rssiSeries;
+    private volatile CircularXYSeries historySeries;
+    private volatile TieredXYSeries[] compareRssiSeries;
+    private volatile CircularXYSeries[] compareHistorySeries;
+    /** Node time of the last reset of each compare series, guarded by the lock of the series. */
+    private volatile int[] compareResetTimes;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        executor = Executors.newSingleThreadScheduledExecutor();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID, getString(R.string.acquisition_channel), NotificationManager.IMPORTANCE_LOW));
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class), 0);
+        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(getString(R.string.acquisition_running))
+                .setContentIntent(contentIntent)
+                .setOngoing(true)
+                .build();
+        startForeground(NOTIFICATION_ID, notification);
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        uiListener = null;
+        if (fNodes == null) {
+            executor.shutdown();
+            return;
+        }
+        executor.execute(() -> {
+            if (connection != null) {
+                connection.close();
+            }
+            try {
+                fNodes.get().close();
+            } catch (ExecutionException | InterruptedException | IOException ignore) {
+            }
+            try {
+                if (recorder != null) {
+                    recorder.close();
+                }
+                if (replay != null) {
+                    replay.close();
+                }
+                if (streamServer != null) {
+                    streamServer.close();
+                }
+            } catch (IOException ignore) {
+            }
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * Opens the nodes and starts scanning, unless already open.
+     * @param replayPath session to replay instead of the USB nodes, or null.
+     * @param simulatedNodes number of nodes to simulate instead of the USB nodes, or 0.
+     */
+    void open(String replayPath, int simulatedNodes) {
+        if (fNodes != null) {
+            return;
+        }
+        fNodes = executor.submit(() -> {
+            NodeManager nodes;
+            if (replayPath != null) {
+                replay = new SessionReader(new File(replayPath));
+                nodes = new NodeManager(ReplayTransport.openAll(replay, 1.0));
+            } else if (simulatedNodes > 0) {
+                nodes = new NodeManager(NodeSimulator.createAll(simulatedNodes, SpectrumSweep.RACE_CHANNELS, 20000, System.nanoTime()));
+            } else {
+                connection = new ConnectionManager(this, executor, this::postMessage);
+                nodes = connection.connect();
+                try {
+                    recorder = SessionRecorder.create(newSessionFile());
+                    nodes.setRecorder(recorder);
+                } catch (IOException ex) {
+                    Log.w(TAG, "Recording disabled", ex);
+                }
+            }
+            nodes.setErrorListener((index, ex) -> postMessage(ex.getMessage()));
+            return nodes;
+        });
+        setMode(MODE_SCAN);
+    }
+
+    private File newSessionFile() {
+        File dir = getExternalFilesDir("sessions");
+        if (dir == null) {
+            dir = new File(getFilesDir(), "sessions");
+        }
+        dir.mkdirs();
+        String name = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        return new File(dir, "session-" + name + ".rhs");
+    }
+
+    /**
+     * Runs the task on the executor once the nodes are connected.
+     */
+    void withNodes(NodesTask task) {
+        executor.execute(() -> {
+            try {
+                task.run(fNodes.get());
+            } catch (ExecutionException | InterruptedException ex) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                postMessage(cause.getMessage());
+            }
+        });
+    }
+
+    /**
+     * @return null until the nodes are connected.
+     */
+    NodeManager getNodes() {
+        if (fNodes == null || !fNodes.isDone()) {
+            return null;
+        }
+        try {
+            return fNodes.get();
+        } catch (ExecutionException | InterruptedException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @param listener null to detach, held samples are then released.
+     */
+    void setUiListener(UiListener listener) {
+        uiListener = listener;
+        if (listener == null) {
+            onFollowed();
+        } else {
+            withNodes(nodes -> nodes.submit(selectedNode, (index, node) -> listener.onFrequency(node.getFrequency())));
+        }
+    }
+
+    /**
+     * Releases the samples held since the last call, can be called from any thread.
+     */
+    void onFollowed() {
+        int held = heldSamples.getAndSet(0);
+        SampleScheduler s = sampler;
+        if (s != null) {
+            s.release(held);
+        }
+    }
+
+    private void postMessage(String msg) {
+        if (msg == null) {
+            // exceptions without a message
+            msg = "Unknown error";
+        }
+        UiListener l = uiListener;
+        if (l != null) {
+            l.onMessage(msg);
+        } else {
+            Log.i(TAG, msg);
+        }
+    }
+
+    boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Starts or stops streaming to the local network, off until asked for.
+     */
+    void setStreaming(boolean enabled) {
+        if (enabled == streaming) {
+            return;
+        }
+        streaming = enabled;
+        executor.execute(() -> {
+            try {
+                if (enabled && streamServer == null) {
+                    InetAddress address = StreamServer.findLanAddress();
+                    streamServer = new StreamServer(address, STREAM_PORT);
+                    postMessage("Streaming on " + address.getHostAddress() + ":" + STREAM_PORT);
+                } else if (!enabled && streamServer != null) {
+                    StreamServer server = streamServer;
+                    streamServer = null;
+                    server.close();
+                }
+            } catch (IOException ex) {
+                streaming = false;
+                postMessage("Streaming failed: " + ex.getMessage());
+            }
+        });
+    }
+
+    int getMode() {
+        return mode;
+    }
+
+    void setMode(int newMode) {
+        if (newMode == mode) {
+            return;
+        }
+        mode = newMode;
+        restart();
+    }
+
+    ChannelPlan getChannelPlan() {
+        return channelPlan;
+    }
+
+    /**
+     * Sets the channels scanned in {@link #MODE_CHANNELS}.
+     */
+    void setChannelPlan(ChannelPlan plan) {
+        channelPlan = plan;
+        if (mode == MODE_CHANNELS) {
+            restart();
+        }
+    }
+
+    long getChannelDwell() {
+        return channelDwellMs;
+    }
+
+    /**
+     * Sets how long each channel is dwelt on in {@link #MODE_CHANNELS}, in ms.
+     */
+    void setChannelDwell(long dwellMs) {
+        channelDwellMs = dwellMs;
+        if (mode == MODE_CHANNELS) {
+            restart();
+        }
+    }
+
+    private void restart() {
+        withNodes(nodes -> {
+            nodes.cancelAll();
+            // only once paused, so held samples are released to the sampler that handed them out
+            sampler = null;
+            lapDetectors = null;
+        });
+        clearBuffers();
+        if (mode == MODE_SCAN) {
+            startScan();
+        } else if (mode == MODE_CHANNELS) {
+            startChannels();
+        } else if (mode == MODE_COMPARE) {
+            startCompare();
+        } else {
+            startSignal();
+        }
+    }
+
+    private void clearBuffers() {
+        spectrumSeries = null;
+        minSeries = null;
+        maxSeries = null;
+        meanSeries = null;
+        p95Series = null;
+        waterfall = null;
+        rssiSeries = null;
+        historySeries = null;
+        compareRssiSeries = null;
+        compareHistorySeries = null;
+        compareResetTimes = null;
+    }
+
+    private void startScan() {
+        FixedXYSeries spectrum = new FixedXYSeries("Live", MIN_FREQ, 1, MAX_FREQ - MIN_FREQ + 1);
+        FixedXYSeries min = new FixedXYSeries("Min", MIN_FREQ, 1, MAX_FREQ - MIN_FREQ + 1);
+        FixedXYSeries max = new FixedXYSeries("Max", MIN_FREQ, 1, MAX_FREQ - MIN_FREQ + 1);
+        FixedXYSeries mean = new FixedXYSeries("Mean", MIN_FREQ, 1, MAX_FREQ - MIN_FREQ + 1);
+        FixedXYSeries p95 = new FixedXYSeries("P95", MIN_FREQ, 1, MAX_FREQ - MIN_FREQ + 1);
+        Waterfall sweeps = new Waterfall(MAX_FREQ - MIN_FREQ + 1, WATERFALL_ROWS, 0, MAX_RSSI);
+        SeriesSnapshot sweepSnapshot = new SeriesSnapshot();
+        SpectrumStats spectrumStats = new SpectrumStats(MIN_FREQ, MAX_FREQ, STATS_WINDOW_SWEEPS*SAMPLES_PER_SWEEP);
+        AtomicLong sweepCount = new AtomicLong();
+        spectrumSeries = spectrum;
+        minSeries = min;
+        maxSeries = max;
+        meanSeries = mean;
+        p95Series = p95;
+        waterfall = sweeps;
+        withNodes(nodes -> new SpectrumSweep(nodes, MIN_FREQ, MAX_FREQ, new SpectrumSweep.Listener() {
+            @Override
+            public void onSample(int index, int freq, int span, int rssi) {
+                int endFreq = Math.min(freq + span - 1, MAX_FREQ);
+                spectrum.fill(freq, endFreq, rssi);
+                StreamServer server = streamServer;
+                if (server != null) {
+                    server.publishSample(index, nodes.currentTime(), freq, rssi);
+                }
+                long sweep = sweepCount.get();
+                for (int f=freq; f<=endFreq; f++) {
+                    spectrumStats.add(f, rssi, sweep);
+                    showSpectrumStats(f);
+                }
+                UiListener l = uiListener;
+                if (index == selectedNode && l != null) {
+                    l.onFrequency(freq);
+                }
+            }
+
+            @Override
+            public void onSweepComplete(long durationMs) {
+                // called by one lane at a time
+                spectrum.snapshot(sweepSnapshot);
+                sweeps.addSweep(sweepSnapshot.ys);
+                long sweep = sweepCount.incrementAndGet();
+                spectrumStats.expireAll(sweep - STATS_WINDOW_SWEEPS + 1);
+                for (int f=MIN_FREQ; f<=MAX_FREQ; f++) {
+                    showSpectrumStats(f);
+                }
+                UiListener l = uiListener;
+                if (l != null) {
+                    l.onSweep();
+                    l.onMessage(String.format("Sweep %d ms", durationMs));
+                }
+            }
+
+            private void showSpectrumStats(int freq) {
+                min.set(freq, spectrumStats.min(freq));
+                max.set(freq, spectrumStats.max(freq));
+                mean.set(freq, (int) Math.round(spectrumStats.mean(freq)));
+                p95.set(freq, spectrumStats.percentile(freq, 95.0));
+            }
+        }).start());
+    }
+
+    private void startChannels() {
+        FixedXYSeries spectrum = new FixedXYSeries("Live", MIN_FREQ, 1, MAX_FREQ - MIN_FREQ + 1);
+        spectrumSeries = spectrum;
+        ChannelPlan plan = channelPlan;
+        long dwellMs = channelDwellMs;
+        withNodes(nodes -> new ChannelScan(nodes, plan, MIN_FREQ, MAX_FREQ, new ChannelScan.Listener() {
+            @Override
+            public void onSample(int index, int freq, int span, int rssi) {
+                spectrum.fill(freq, Math.min(freq + span - 1, MAX_FREQ), rssi);
+                StreamServer server = streamServer;
+                if (server != null) {
+                    server.publishSample(index, nodes.currentTime(), freq, rssi);
+                }
+                UiListener l = uiListener;
+                if (index == selectedNode && l != null) {
+                    l.onFrequency(freq);
+                }
+            }
+
+            @Override
+            public void onCycleComplete(long durationMs, ChannelScan.Report report) {
+                UiListener l = uiListener;
+                if (l == null) {
+                    return;
+                }
+                StringBuilder msg = new StringBuilder(String.format(Locale.US, "Cycle %d ms, noise %d", durationMs, report.bandNoiseFloor));
+                int busy = 0;
+                for (int i=0; i<report.freqs.length; i++) {
+                    if (report.occupancy[i] > 0) {
+                        msg.append(String.format(Locale.US, "%s %d %d%% (floor %d)", busy++ == 0 ? ", busy: " : ", ", report.freqs[i], report.occupancy[i], report.noiseFloor[i]));
+                    }
+                }
+                if (busy == 0) {
+                    msg.append(", all clear");
+                }
+                l.onMessage(msg.toString());
+            }
+        }, dwellMs, TimeUnit.MILLISECONDS, ChannelScan.BACKGROUND_INTERVAL).start());
+    }
+
+    private void startSignal() {
+        TieredXYSeries rssi = new TieredXYSeries("Live", true);
+        CircularXYSeries history = new CircularXYSeries("History", NUM_SAMPLES);
+        rssiSeries = rssi;
+        historySeries = history;
+        withNodes(nodes -> {
+            LapDetector[] detectors = createLapDetectors(nodes.size());
+            heldSamples.set(0);
+            // the listener releases to its own sampler, the field moves on to the next one on a restart
+            SampleScheduler[] self = new SampleScheduler[1];
+            SampleScheduler s = nodes.createSampler(SIGNAL_SAMPLE_PERIOD, TimeUnit.MILLISECONDS, MAX_UI_BACKLOG, (index, stats) -> {
+                detectors[index].onSample(stats);
+                StreamServer server = streamServer;
+                if (server != null) {
+                    server.publishSample(index, stats.t, nodes.getNode(index).getTunedFrequency(), stats.rssi);
+                }
+                if (index != selectedNode) {
+                    self[0].release();
+                    return;
+                }
+                rssi.add(stats.t, stats.rssi);
+                if(stats.historyRssi != 0) {
+                    history.add(stats.t - stats.msSinceHistoryStart, stats.historyRssi);
+                    if (stats.msSinceHistoryStart != stats.msSinceHistoryEnd) {
+                        history.add(stats.t - stats.msSinceHistoryEnd, stats.historyRssi);
+                    }
+                }
+                UiListener l = uiListener;
+                if (l != null) {
+                    // the sample is held until the UI catches up
+                    heldSamples.incrementAndGet();
+                    l.onFollowTime(stats.t);
+                } else {
+                    self[0].release();
+                }
+            });
+            self[0] = s;
+            s.setPriority(selectedNode, SampleScheduler.PRIORITY_HIGH);
+            sampler = s;
+            s.start();
+        });
+    }
+
+    /**
+     * Samples all nodes as fast as they go, merged onto one time axis that only advances once every node has caught up.
+     */
+    private void startCompare() {
+        withNodes(nodes -> {
+            int n = nodes.size();
+            TieredXYSeries[] rssi = new TieredXYSeries[n];
+            CircularXYSeries[] history = new CircularXYSeries[n];
+            int[] resetTimes = new int[n];
+            for (int i=0; i<n; i++) {
+                rssi[i] = new TieredXYSeries(String.format(Locale.US, "Node %d", i+1), true);
+                history[i] = new CircularXYSeries(String.format(Locale.US, "Node %d history", i+1), NUM_SAMPLES);
+                resetTimes[i] = Integer.MIN_VALUE;
+            }
+            compareResetTimes = resetTimes;
+            compareRssiSeries = rssi;
+            compareHistorySeries = history;
+            UiListener l = uiListener;
+            if (l != null) {
+                l.onBuffersChanged();
+            }
+            LapDetector[] detectors = createLapDetectors(n);
+            SampleMerger merger = new SampleMerger(n, MERGE_CAPACITY, MAX_MERGE_SKEW_MS);
+            SampleMerger.Sink sink = new SampleMerger.Sink() {
+                @Override
+                public void onSample(int node, int time, int value) {
+                    // on whichever lane drains, samples still queued from before a retune are dropped
+                    synchronized (rssi[node]) {
+                        if (time >= resetTimes[node]) {
+                            rssi[node].add(time, value);
+                        }
+                    }
+                }
+
+                @Override
+                public void onWatermark(int time) {
+                    UiListener l = uiListener;
+                    if (l != null) {
+                        l.onFollowTime(time);
+                    }
+                }
+            };
+            // no back-pressure, the UI only follows the latest time
+            SampleScheduler s = nodes.createSampler(SIGNAL_SAMPLE_PERIOD, TimeUnit.MILLISECONDS, 0, (index, stats) -> {
+                detectors[index].onSample(stats);
+                StreamServer server = streamServer;
+                if (server != null) {
+                    server.publishSample(index, stats.t, nodes.getNode(index).getTunedFrequency(), stats.rssi);
+                }
+                if(stats.historyRssi != 0) {
+                    history[index].add(stats.t - stats.msSinceHistoryStart, stats.historyRssi);
+                    if (stats.msSinceHistoryStart != stats.msSinceHistoryEnd) {
+                        history[index].add(stats.t - stats.msSinceHistoryEnd, stats.historyRssi);
+                    }
+                }
+                merger.offer(index, stats.t, stats.rssi);
+                merger.drain(sink);
+            });
+            sampler = s;
+            s.start();
+        });
+    }
+
+    private LapDetector[] createLapDetectors(int n) {
+        LapDetector[] detectors = new LapDetector[n];
+        for (int i=0; i<n; i++) {
+            detectors[i] = new LapDetector(i, ENTER_AT, EXIT_AT, MIN_LAP_MILLIS, this::onLap);
+        }
+        lapDetectors = detectors;
+        return detectors;
+    }
+
+    private void onLap(int index, int lap, int time, int lapMillis, int peakRssi) {
+        StreamServer server = streamServer;
+        if (server != null) {
+            server.publishLap(index, lap, time, lapMillis, peakRssi);
+        }
+        postMessage(String.format(Locale.US, "Node %d lap %d: %.3f s", index+1, lap, lapMillis/1000.0));
+    }
+
+    /**
+     * Tunes the selected node, restarting its signal buffers if the frequency changes.
+     */
+    void setFrequency(int freq) {
+        TieredXYSeries rssi = rssiSeries;
+        CircularXYSeries history = historySeries;
+        TieredXYSeries[] compareRssi = compareRssiSeries;
+        CircularXYSeries[] compareHistory = compareHistorySeries;
+        int[] compareResets = compareResetTimes;
+        withNodes(nodes -> nodes.submit(selectedNode, (index, node) -> {
+            if (node.getTunedFrequency() == freq) {
+                return;
+            }
+            node.setFrequency(freq);
+            // the signal series and compare histories are only written from the lane of their node
+            if (rssi != null) {
+                rssi.reset();
+            }
+            if (history != null) {
+                history.reset();
+            }
+            // the compare series are written by whichever lane drains the merger, which can still hold older samples
+            if (compareRssi != null && compareResets != null && index < compareRssi.length) {
+                synchronized (compareRssi[index]) {
+                    compareResets[index] = nodes.currentTime();
+                    compareRssi[index].reset();
+                }
+                compareHistory[index].reset();
+            }
+        }));
+    }
+
+    /**
+     * @return null if not sampling.
+     */
+    SampleScheduler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * @return one per node, null if laps aren't being detected.
+     */
+    LapDetector[] getLapDetectors() {
+        return lapDetectors;
+    }
+
+    FixedXYSeries getSpectrumSeries() {
+        return spectrumSeries;
+    }
+
+    FixedXYSeries getMinSeries() {
+        return minSeries;
+    }
+
+    FixedXYSeries getMaxSeries() {
+        return maxSeries;
+    }
+
+    FixedXYSeries getMeanSeries() {
+        return meanSeries;
+    }
+
+    FixedXYSeries getP95Series() {
+        return p95Series;
+    }
+
+    Waterfall getWaterfall() {
+        return waterfall;
+    }
+
+    TieredXYSeries getRssiSeries() {
+        return rssiSeries;
+    }
+
+    CircularXYSeries getHistorySeries() {
+        return historySeries;
+    }
+
+    /**
+     * @return one per node, null until the nodes are connected.
+     */
+    TieredXYSeries[] getCompareRssiSeries() {
+        return compareRssiSeries;
+    }
+
+    CircularXYSeries[] getCompareHistorySeries() {
+        return compareHistorySeries;
+    }
+}
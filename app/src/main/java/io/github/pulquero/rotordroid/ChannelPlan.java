@@ -0,0 +1,81 @@
+package io.github.pulquero.rotordroid;
+
+import java.util.Arrays;
+
+/**
+ * A set of channel centre frequencies in MHz, in ascending order.
+ */
+public final class ChannelPlan {
+    public static final ChannelPlan RACEBAND = new ChannelPlan("Raceband", 5658, 5695, 5732, 5769, 5806, 5843, 5880, 5917);
+    public static final ChannelPlan FATSHARK = new ChannelPlan("Fatshark", 5740, 5760, 5780, 5800, 5820, 5840, 5860, 5880);
+    public static final ChannelPlan BOSCAM_A = new ChannelPlan("Boscam A", 5865, 5845, 5825, 5805, 5785, 5765, 5745, 5725);
+    public static final ChannelPlan BOSCAM_B = new ChannelPlan("Boscam B", 5733, 5752, 5771, 5790, 5809, 5828, 5847, 5866);
+    public static final ChannelPlan BOSCAM_E = new ChannelPlan("Boscam E", 5705, 5685, 5665, 5645, 5885, 5905, 5925, 5945);
+
+    private final String name;
+    final int[] freqs;
+
+    /**
+     * @param freqs in any order, duplicates are ignored.
+     */
+    public ChannelPlan(String name, int... freqs) {
+        this.name = name;
+        int[] sorted = freqs.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int freq : sorted) {
+            if (n == 0 || sorted[n-1] != freq) {
+                sorted[n++] = freq;
+            }
+        }
+        this.freqs = Arrays.copyOf(sorted, n);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return freqs.length;
+    }
+
+    public int getFrequency(int i) {
+        return freqs[i];
+    }
+
+    /**
+     * Adds the frequencies halfway between adjacent channels, to also watch the spaces between them.
+     */
+    public ChannelPlan withGaps() {
+        int[] all = Arrays.copyOf(freqs, 2*freqs.length - 1);
+        for (int i=1; i<freqs.length; i++) {
+            all[freqs.length + i - 1] = (freqs[i-1] + freqs[i])/2;
+        }
+        return new ChannelPlan(name + " with gaps", all);
+    }
+
+    public ChannelPlan plus(ChannelPlan other) {
+        int[] all = Arrays.copyOf(freqs, freqs.length + other.freqs.length);
+        System.arraycopy(other.freqs, 0, all, freqs.length, other.freqs.length);
+        return new ChannelPlan(name + " + " + other.name, all);
+    }
+
+    /**
+     * Keeps the channels within the band.
+     */
+    public ChannelPlan within(int minFreq, int maxFreq) {
+        int[] inBand = new int[freqs.length];
+        int n = 0;
+        for (int freq : freqs) {
+            if (freq >= minFreq && freq <= maxFreq) {
+                inBand[n++] = freq;
+            }
+        }
+        return new ChannelPlan(name, Arrays.copyOf(inBand, n));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
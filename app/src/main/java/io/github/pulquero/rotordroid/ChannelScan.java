@@ -0,0 +1,156 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cycles through the channels of a plan split across all nodes, dwelling a fixed time on each.
+ * Every few cycles a background pass covers the whole band, to measure the noise floor of the band.
+ * After each cycle the occupancy of each channel, the share of its recent samples clearly above the band noise floor,
+ * and its own noise floor, a low percentile of its recent samples, are reported.
+ */
+public final class ChannelScan extends SplitScan {
+    public interface Listener {
+        /**
+         * Called on the lane of the node that measured it.
+         * @param span number of 1 MHz bins starting at freq the measurement stands for, more than one for the background pass.
+         */
+        void onSample(int index, int freq, int span, int rssi);
+
+        /**
+         * Called by one lane at a time.
+         */
+        void onCycleComplete(long durationMs, Report report);
+    }
+
+    public static final class Report {
+        public final int[] freqs;
+        /** Percentage of the recent samples. */
+        public final int[] occupancy;
+        public final int[] noiseFloor;
+        public final int bandNoiseFloor;
+
+        Report(int[] freqs, int bandNoiseFloor) {
+            this.freqs = freqs;
+            this.occupancy = new int[freqs.length];
+            this.noiseFloor = new int[freqs.length];
+            this.bandNoiseFloor = bandNoiseFloor;
+        }
+    }
+
+    static final int BACKGROUND_STEP = SpectrumSweep.COARSE_STEP;
+    static final int WINDOW_CYCLES = 20;
+    /** Above the band noise floor for a channel to count as occupied. */
+    static final int OCCUPIED_MARGIN = 10;
+    private static final double NOISE_PERCENTILE = 10.0;
+    static final long DWELL_MS = 25L;
+    static final int BACKGROUND_INTERVAL = 10;
+
+    private final int[] channels;
+    private final int minFreq;
+    private final int maxFreq;
+    private final Listener listener;
+    private final long dwellNanos;
+    private final int backgroundInterval;
+    private final SpectrumStats stats;
+    private final int[] backgroundRssi;
+    private boolean background;
+    private int bandNoiseFloor;
+    private long cycle;
+    private long cycleStart;
+
+    public ChannelScan(NodeManager nodes, ChannelPlan plan, int minFreq, int maxFreq, Listener listener) {
+        this(nodes, plan, minFreq, maxFreq, listener, DWELL_MS, TimeUnit.MILLISECONDS, BACKGROUND_INTERVAL);
+    }
+
+    /**
+     * @param backgroundInterval number of cycles between background passes.
+     */
+    public ChannelScan(NodeManager nodes, ChannelPlan plan, int minFreq, int maxFreq, Listener listener, long dwell, TimeUnit unit, int backgroundInterval) {
+        super(nodes);
+        if (backgroundInterval <= 0) {
+            throw new IllegalArgumentException("Background interval must be positive: " + backgroundInterval);
+        }
+        this.channels = plan.within(minFreq, maxFreq).freqs;
+        if (channels.length == 0) {
+            throw new IllegalArgumentException(String.format("No channels of %s within %d-%d", plan, minFreq, maxFreq));
+        }
+        this.minFreq = minFreq;
+        this.maxFreq = maxFreq;
+        this.listener = listener;
+        this.dwellNanos = unit.toNanos(dwell);
+        this.backgroundInterval = backgroundInterval;
+        this.stats = new SpectrumStats(channels[0], channels[channels.length-1], WINDOW_CYCLES);
+        this.backgroundRssi = new int[(maxFreq - minFreq)/BACKGROUND_STEP + 1];
+    }
+
+    @Override
+    void planFirstPass() {
+        // the occupancy needs the noise floor from the start
+        planBackgroundPass();
+    }
+
+    private void planBackgroundPass() {
+        background = true;
+        int[] freqs = new int[backgroundRssi.length];
+        for (int i=0; i<freqs.length; i++) {
+            freqs[i] = minFreq + i*BACKGROUND_STEP;
+        }
+        split(freqs, freqs.length, Math.min(BACKGROUND_STEP, maxFreq - minFreq + 1));
+    }
+
+    private void planChannelPass() {
+        background = false;
+        cycleStart = System.nanoTime();
+        split(channels, channels.length, 1);
+    }
+
+    @Override
+    void advance() {
+        if (background) {
+            // most of the band is idle, so the median is noise
+            int[] sorted = backgroundRssi.clone();
+            Arrays.sort(sorted);
+            bandNoiseFloor = sorted[sorted.length/2];
+        } else {
+            stats.expireAll(cycle - WINDOW_CYCLES + 1);
+            listener.onCycleComplete(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cycleStart), report());
+            cycle++;
+            if (cycle % backgroundInterval == 0) {
+                planBackgroundPass();
+                return;
+            }
+        }
+        planChannelPass();
+    }
+
+    private Report report() {
+        Report report = new Report(channels.clone(), bandNoiseFloor);
+        for (int i=0; i<channels.length; i++) {
+            int freq = channels[i];
+            int n = stats.count(freq);
+            report.occupancy[i] = n > 0 ? 100*stats.countAtLeast(freq, bandNoiseFloor + OCCUPIED_MARGIN)/n : 0;
+            report.noiseFloor[i] = stats.percentile(freq, NOISE_PERCENTILE);
+        }
+        return report;
+    }
+
+    @Override
+    int measure(int index, Node node, LapStats lapStats, int freq, int span, long tuneTime) throws IOException {
+        sleepUntil(tuneTime, dwellNanos);
+        node.readLapStats(nodes.currentTime(), lapStats);
+        nodes.record(index, freq, lapStats);
+        listener.onSample(index, freq, span, lapStats.rssi);
+        return lapStats.rssi;
+    }
+
+    @Override
+    void onMeasured(int freq, int rssi) {
+        if (background) {
+            backgroundRssi[(freq - minFreq)/BACKGROUND_STEP] = rssi;
+        } else {
+            stats.add(freq, rssi, cycle);
+        }
+    }
+}
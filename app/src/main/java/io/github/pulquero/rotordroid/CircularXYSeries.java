@@ -1,14 +1,13 @@
 package io.github.pulquero.rotordroid;
 
-import com.androidplot.xy.XYSeries;
-
-public final class CircularXYSeries implements XYSeries {
+public final class CircularXYSeries implements IntXYSeries {
     private final String title;
     private final int[] xVals;
     private final int[] yVals;
     private int head;
     private int tail;
     private int size;
+    private final SeqLock lock = new SeqLock();
 
     public CircularXYSeries(String title, int size) {
         this.title = title;
@@ -16,7 +15,8 @@ public final class CircularXYSeries implements XYSeries {
         this.yVals = new int[size];
     }
 
-    public void add(int x, int y) {
+    public synchronized void add(int x, int y) {
+        lock.beginWrite();
         if(size < xVals.length) {
             size++;
         } else {
@@ -31,6 +31,29 @@ public final class CircularXYSeries implements XYSeries {
         xVals[tail] = x;
         yVals[tail] = y;
         tail++;
+        lock.endWrite();
+    }
+
+    @Override
+    public void snapshot(SeriesSnapshot into) {
+        int capacity = xVals.length;
+        into.ensureCapacity(capacity);
+        while (true) {
+            int seq = lock.beginRead();
+            int n = size;
+            int start = head;
+            if (n <= capacity && start < capacity) {
+                int firstLen = Math.min(n, capacity - start);
+                System.arraycopy(xVals, start, into.xs, 0, firstLen);
+                System.arraycopy(xVals, 0, into.xs, firstLen, n - firstLen);
+                System.arraycopy(yVals, start, into.ys, 0, firstLen);
+                System.arraycopy(yVals, 0, into.ys, firstLen, n - firstLen);
+                into.size = n;
+            }
+            if (lock.validate(seq, into)) {
+                return;
+            }
+        }
     }
 
     @Override
@@ -40,12 +63,31 @@ public final class CircularXYSeries implements XYSeries {
 
     @Override
     public Number getX(int index) {
-        return xVals[(head+index) % size];
+        return xVals[wrap(head+index)];
     }
 
     @Override
     public Number getY(int index) {
-        return yVals[(head+index) % size];
+        return yVals[wrap(head+index)];
+    }
+
+    private int wrap(int index) {
+        return index < xVals.length ? index : index - xVals.length;
+    }
+
+    @Override
+    public int[] xValues() {
+        return xVals;
+    }
+
+    @Override
+    public int[] yValues() {
+        return yVals;
+    }
+
+    @Override
+    public int start() {
+        return head;
     }
 
     @Override
@@ -53,9 +95,11 @@ public final class CircularXYSeries implements XYSeries {
         return title;
     }
 
-    public void reset() {
+    public synchronized void reset() {
+        lock.beginWrite();
         head = 0;
         tail = 0;
         size = 0;
+        lock.endWrite();
     }
 }
@@ -0,0 +1,130 @@
+package io.github.pulquero.rotordroid;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps node time to host time over many exchanges, to timestamp samples to within a few ms.
+ * The protocol has no absolute node clock, so msSinceLastLap serves as one, restarting at every lap.
+ * Each exchange bounds the host time of the last lap to [send - msSinceLastLap, receive - msSinceLastLap],
+ * and intersecting the bounds favours the minimum round trip samples, as in NTP.
+ * The rate of the node clock relative to the host is tracked across minimum round trip samples.
+ * Not thread-safe, used from the lane of the node.
+ */
+final class ClockSync {
+    /** Allowance for the host time origin, learnt from ms times. */
+    private static final double SLACK_MS = 0.5;
+    private static final double MAX_DRIFT = 1e-3;
+    private static final double DRIFT_GAIN = 1.0/16.0;
+    private static final int MIN_DRIFT_SPAN_MS = 10000;
+    private static final int RTT_WINDOW = 256;
+    private static final long MAX_ORIGIN_JITTER_NANOS = TimeUnit.MILLISECONDS.toNanos(50L);
+
+    private long originNanos;
+    private boolean hasOrigin;
+    private int laps;
+    private int lastMsSinceLap;
+    private boolean hasLap;
+    private double lapLo;
+    private double lapHi;
+    private double drift;
+    private boolean hasDriftRef;
+    private double driftRefTime;
+    private int driftRefMsSinceLap;
+    private double minRtt = Double.POSITIVE_INFINITY;
+    private double windowMinRtt = Double.POSITIVE_INFINITY;
+    private int windowCount;
+
+    /**
+     * Learns the host time origin from the time given with a request.
+     * The time is truncated to ms when taken, so the earliest origin is the most accurate.
+     */
+    void onRequest(long currentTime, long nowNanos) {
+        long origin = nowNanos - TimeUnit.MILLISECONDS.toNanos(currentTime);
+        if (!hasOrigin || origin < originNanos || origin > originNanos + MAX_ORIGIN_JITTER_NANOS) {
+            // earlier is more accurate, much later means the time was reset
+            originNanos = origin;
+            hasOrigin = true;
+        }
+    }
+
+    /**
+     * @return host time, in ms, when the node answered.
+     */
+    double onLapStats(long recvNanos, long rttNanos, int laps, int msSinceLastLap) {
+        double recvTime = (recvNanos - originNanos)/1e6;
+        double rtt = rttNanos/1e6;
+        double sendTime = recvTime - rtt;
+        int msSinceLap = msSinceLastLap;
+        updateMinRtt(rtt);
+
+        // the node truncates to ms
+        double rate = 1.0 + drift;
+        double lo = sendTime - SLACK_MS - (msSinceLap + 1)*rate;
+        double hi = recvTime + SLACK_MS - msSinceLap*rate;
+        if (!hasLap || laps != this.laps || msSinceLap < lastMsSinceLap || lo > lapHi || hi < lapLo) {
+            // a new lap, a wrapped counter, or the host time was reset
+            this.laps = laps;
+            lapLo = lo;
+            lapHi = hi;
+            hasLap = true;
+            hasDriftRef = false;
+        } else {
+            lapLo = Math.max(lapLo, lo);
+            lapHi = Math.min(lapHi, hi);
+        }
+        lastMsSinceLap = msSinceLap;
+        updateDrift(sendTime + rtt/2.0, rtt, msSinceLap);
+        double t = lapTime() + (msSinceLap + 0.5)*rate;
+        return Math.max(sendTime, Math.min(recvTime, t));
+    }
+
+    private void updateMinRtt(double rtt) {
+        windowMinRtt = Math.min(windowMinRtt, rtt);
+        if (++windowCount == RTT_WINDOW) {
+            minRtt = windowMinRtt;
+            windowMinRtt = Double.POSITIVE_INFINITY;
+            windowCount = 0;
+        }
+    }
+
+    private void updateDrift(double midTime, double rtt, int msSinceLap) {
+        if (rtt > Math.min(minRtt, windowMinRtt) + 2.0*SLACK_MS) {
+            return;
+        }
+        if (!hasDriftRef) {
+            driftRefTime = midTime;
+            driftRefMsSinceLap = msSinceLap;
+            hasDriftRef = true;
+            return;
+        }
+        int span = msSinceLap - driftRefMsSinceLap;
+        if (span >= MIN_DRIFT_SPAN_MS) {
+            double measured = (midTime - driftRefTime - span)/span;
+            measured = Math.max(-MAX_DRIFT, Math.min(MAX_DRIFT, measured));
+            drift += DRIFT_GAIN*(measured - drift);
+            driftRefTime = midTime;
+            driftRefMsSinceLap = msSinceLap;
+        }
+    }
+
+    /**
+     * Host time, in ms, of the last lap reported by the node.
+     */
+    double lapTime() {
+        return (lapLo + lapHi)/2.0;
+    }
+
+    /**
+     * Half the width of the interval the last lap is known to be in, in ms.
+     */
+    double lapUncertainty() {
+        return (lapHi - lapLo)/2.0;
+    }
+
+    /**
+     * Rate of the node clock relative to the host clock, minus one.
+     */
+    double drift() {
+        return drift;
+    }
+}
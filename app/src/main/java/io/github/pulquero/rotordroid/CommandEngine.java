@@ -0,0 +1,186 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.IOException;
+
+/**
+ * Pipelines node commands over a {@link Transport}.
+ * Queued commands go out together in a single write on {@link #flush()},
+ * responses are matched to their requests in the order they were sent.
+ * Not thread-safe.
+ */
+final class CommandEngine {
+    interface ResponseHandler {
+        void onResponse(byte[] buf, int offset, Object target, long tag, long rttNanos);
+    }
+
+    static final int MAX_PENDING = 16;
+    static final int MAX_PAYLOAD_SIZE = 32;
+    private static final int READ_SIZE = 64;
+    private static final int RX_BUFFER_SIZE = 1024;
+
+    private final Transport transport;
+    private final int timeout;
+    private final byte[] txBuf = new byte[MAX_PENDING*(1+MAX_PAYLOAD_SIZE+1)];
+    private int txLen;
+    private final byte[] readBuf = new byte[READ_SIZE];
+    private final ResponseFramer framer = new ResponseFramer(RX_BUFFER_SIZE, MAX_PAYLOAD_SIZE+1);
+    private byte failedCmd;
+    private int failures;
+
+    // ring of outstanding reads: in-flight requests first, followed by queued ones
+    private final byte[] cmds = new byte[MAX_PENDING];
+    private final int[] payloadSizes = new int[MAX_PENDING];
+    private final ResponseHandler[] handlers = new ResponseHandler[MAX_PENDING];
+    private final Object[] targets = new Object[MAX_PENDING];
+    private final long[] tags = new long[MAX_PENDING];
+    private final long[] sendTimes = new long[MAX_PENDING];
+    private int head;
+    private int inFlight;
+    private int queued;
+
+    CommandEngine(Transport transport, int timeout) {
+        this.transport = transport;
+        this.timeout = timeout;
+    }
+
+    void queueRead(byte cmd, int payloadSize, ResponseHandler handler, Object target, long tag) {
+        if (inFlight + queued >= MAX_PENDING) {
+            throw new IllegalStateException("Too many pending commands");
+        }
+        if (payloadSize > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException(String.format("%h: Payload too large %d", cmd, payloadSize));
+        }
+        ensureTxCapacity(1);
+        txBuf[txLen++] = cmd;
+        int slot = (head + inFlight + queued) % MAX_PENDING;
+        cmds[slot] = cmd;
+        payloadSizes[slot] = payloadSize;
+        handlers[slot] = handler;
+        targets[slot] = target;
+        tags[slot] = tag;
+        queued++;
+    }
+
+    void queueWrite16(byte cmd, int data) {
+        ensureTxCapacity(1+2+1);
+        int start = txLen;
+        txBuf[txLen++] = cmd;
+        txLen = Node.write16(txBuf, txLen, data);
+        txBuf[txLen] = Node.calculateChecksum(txBuf, start+1, txLen-start-1);
+        txLen++;
+    }
+
+    private void ensureTxCapacity(int size) {
+        if (txLen + size > txBuf.length) {
+            throw new IllegalStateException("Command buffer full");
+        }
+    }
+
+    int pending() {
+        return inFlight + queued;
+    }
+
+    void flush() throws IOException {
+        if (txLen == 0) {
+            return;
+        }
+        long sendTime = System.nanoTime();
+        try {
+            transport.write(txBuf, txLen, timeout);
+        } catch (IOException ex) {
+            clear();
+            throw ex;
+        }
+        txLen = 0;
+        for (int i=0; i<queued; i++) {
+            sendTimes[(head + inFlight + i) % MAX_PENDING] = sendTime;
+        }
+        inFlight += queued;
+        queued = 0;
+    }
+
+    void awaitResponses() throws IOException {
+        while (inFlight > 0) {
+            int len = transport.read(readBuf, timeout);
+            long recvTime = System.nanoTime();
+            if (len <= 0) {
+                byte cmd = cmds[head];
+                for (int i=0; i<inFlight; i++) {
+                    framer.drop();
+                }
+                clear();
+                throw new IOException(String.format("%h: Response timeout", cmd));
+            }
+            framer.append(readBuf, len);
+            dispatch(recvTime);
+        }
+        // anything left over doesn't belong to a request
+        framer.skip(framer.available());
+        if (failures > 0) {
+            byte cmd = failedCmd;
+            int count = failures;
+            failures = 0;
+            throw new IOException(String.format("%h: Invalid checksum (%d dropped)", cmd, count));
+        }
+    }
+
+    void execute() throws IOException {
+        flush();
+        awaitResponses();
+    }
+
+    private void dispatch(long recvTime) {
+        while (inFlight > 0) {
+            int result = framer.poll(payloadSizes[head]+1);
+            if (result == ResponseFramer.INCOMPLETE) {
+                break;
+            }
+            byte cmd = cmds[head];
+            ResponseHandler handler = handlers[head];
+            Object target = targets[head];
+            long tag = tags[head];
+            long rtt = recvTime - sendTimes[head];
+            handlers[head] = null;
+            targets[head] = null;
+            head = (head + 1) % MAX_PENDING;
+            inFlight--;
+            if (result == ResponseFramer.FRAME) {
+                handler.onResponse(framer.frame(), 0, target, tag, rtt);
+            } else {
+                if (failures == 0) {
+                    failedCmd = cmd;
+                }
+                failures++;
+            }
+        }
+    }
+
+    long frames() {
+        return framer.frames();
+    }
+
+    long droppedFrames() {
+        return framer.droppedFrames();
+    }
+
+    long resyncs() {
+        return framer.resyncs();
+    }
+
+    long skippedBytes() {
+        return framer.skippedBytes();
+    }
+
+    void clear() {
+        for (int i=0; i<MAX_PENDING; i++) {
+            handlers[i] = null;
+            targets[i] = null;
+        }
+        head = 0;
+        inFlight = 0;
+        queued = 0;
+        txLen = 0;
+        failures = 0;
+        framer.clear();
+    }
+}
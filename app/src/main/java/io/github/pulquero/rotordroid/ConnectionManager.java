@@ -0,0 +1,180 @@
+package io.github.pulquero.rotordroid;
+
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects to the nodes over USB, and reconnects them when their device is attached again.
+ * Only the nodes of the device that came and went are touched, matched by its serial number where it has one.
+ * If the device needs permission again, it is asked for and the device is reconnected once granted.
+ * Instead of waiting a fixed time for the nodes to boot, they are polled until they answer.
+ * Acquisition carries on across a reconnect, as the tasks of a node run against its replacement.
+ */
+final class ConnectionManager {
+    interface Listener {
+        void onConnectionChanged(String msg);
+    }
+
+    private static final long READY_TIMEOUT_MS = 5000L;
+    private static final String ACTION_USB_PERMISSION = "io.github.pulquero.rotordroid.USB_PERMISSION";
+
+    private final Context ctx;
+    private final Executor executor;
+    private final Listener listener;
+    private NodeManager nodes;
+    /** The transport each node was last opened on, to match devices against. */
+    private UsbTransport[] slots;
+    private boolean registered;
+
+    private final BroadcastReceiver usbReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+            if (device == null) {
+                return;
+            }
+            if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(intent.getAction())) {
+                executor.execute(() -> disconnect(device));
+            } else if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(intent.getAction())) {
+                executor.execute(() -> reconnect(device));
+            } else if (ACTION_USB_PERMISSION.equals(intent.getAction())) {
+                if (intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false)) {
+                    executor.execute(() -> reconnect(device));
+                } else {
+                    listener.onConnectionChanged("No permission for USB device");
+                }
+            }
+        }
+    };
+
+    /**
+     * @param executor to reconnect on.
+     */
+    ConnectionManager(Context ctx, Executor executor, Listener listener) {
+        this.ctx = ctx.getApplicationContext();
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    /**
+     * Opens all the nodes and waits for them to answer.
+     */
+    NodeManager connect() throws IOException {
+        List<UsbTransport> transports = UsbTransport.openAll(ctx);
+        NodeManager newNodes = new NodeManager(transports);
+        try {
+            newNodes.awaitReady(READY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (IOException ex) {
+            newNodes.close();
+            throw ex;
+        }
+        synchronized (this) {
+            nodes = newNodes;
+            slots = transports.toArray(new UsbTransport[0]);
+            IntentFilter filter = new IntentFilter(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+            filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
+            filter.addAction(ACTION_USB_PERMISSION);
+            ctx.registerReceiver(usbReceiver, filter);
+            registered = true;
+        }
+        return newNodes;
+    }
+
+    private void disconnect(UsbDevice device) {
+        NodeManager current;
+        List<Integer> detached = new ArrayList<>();
+        synchronized (this) {
+            if (!registered) {
+                return;
+            }
+            current = nodes;
+            for (int i=0; i<slots.length; i++) {
+                if (slots[i].isOn(device)) {
+                    detached.add(i);
+                }
+            }
+        }
+        for (int index : detached) {
+            current.disconnect(index);
+            listener.onConnectionChanged(String.format("Node %d detached", index+1));
+        }
+    }
+
+    private void reconnect(UsbDevice device) {
+        NodeManager current;
+        synchronized (this) {
+            if (!registered) {
+                return;
+            }
+            current = nodes;
+        }
+        UsbManager manager = (UsbManager) ctx.getSystemService(Context.USB_SERVICE);
+        if (!manager.hasPermission(device)) {
+            // attached before the permission dialog is answered, the answer comes back to the receiver
+            Intent permission = new Intent(ACTION_USB_PERMISSION).setPackage(ctx.getPackageName());
+            manager.requestPermission(device, PendingIntent.getBroadcast(ctx, 0, permission, 0));
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            List<UsbTransport> transports = UsbTransport.open(ctx, device);
+            List<Future<?>> reconnects = new ArrayList<>(transports.size());
+            StringBuilder reconnected = new StringBuilder();
+            int unknown = 0;
+            for (UsbTransport transport : transports) {
+                int index = -1;
+                synchronized (this) {
+                    for (int i=0; i<slots.length; i++) {
+                        if (slots[i].isSamePort(transport)) {
+                            index = i;
+                            slots[i] = transport;
+                            break;
+                        }
+                    }
+                }
+                if (index >= 0) {
+                    reconnects.add(current.reconnect(index, transport, READY_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+                    reconnected.append(reconnected.length() > 0 ? ", " : "").append(index+1);
+                } else {
+                    transport.close();
+                    unknown++;
+                }
+            }
+            for (Future<?> f : reconnects) {
+                f.get();
+            }
+            if (!reconnects.isEmpty()) {
+                listener.onConnectionChanged(String.format("Reconnected node %s in %d ms", reconnected, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            }
+            if (unknown > 0) {
+                listener.onConnectionChanged(String.format("Found %d new nodes, restart to use them", unknown));
+            }
+        } catch (IOException ex) {
+            listener.onConnectionChanged(ex.getMessage());
+        } catch (ExecutionException ex) {
+            listener.onConnectionChanged(ex.getCause().getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    synchronized void close() {
+        if (registered) {
+            ctx.unregisterReceiver(usbReceiver);
+            registered = false;
+        }
+    }
+}
@@ -1,22 +1,54 @@
 package io.github.pulquero.rotordroid;
 
-import com.androidplot.xy.XYSeries;
-
-public final class FixedXYSeries implements XYSeries {
+public final class FixedXYSeries implements IntXYSeries {
     private final String title;
+    private final int[] xVals;
     private final int[] yVals;
     private final int xOffset;
     private final int xFactor;
+    private final SeqLock lock = new SeqLock();
 
     public FixedXYSeries(String title, int offset, int factor, int size) {
         this.title = title;
+        this.xVals = new int[size];
         this.yVals = new int[size];
         this.xOffset = offset;
         this.xFactor = factor;
+        for (int i=0; i<size; i++) {
+            xVals[i] = xFactor*i+xOffset;
+        }
     }
 
-    public void set(int x, int y) {
+    public synchronized void set(int x, int y) {
+        lock.beginWrite();
         yVals[(x-xOffset)/xFactor] = y;
+        lock.endWrite();
+    }
+
+    /**
+     * Sets a run of consecutive points to the same value as a single update.
+     */
+    public synchronized void fill(int fromX, int toX, int y) {
+        lock.beginWrite();
+        for (int i=(fromX-xOffset)/xFactor; i<=(toX-xOffset)/xFactor; i++) {
+            yVals[i] = y;
+        }
+        lock.endWrite();
+    }
+
+    @Override
+    public void snapshot(SeriesSnapshot into) {
+        int n = yVals.length;
+        into.ensureCapacity(n);
+        System.arraycopy(xVals, 0, into.xs, 0, n);
+        while (true) {
+            int seq = lock.beginRead();
+            System.arraycopy(yVals, 0, into.ys, 0, n);
+            into.size = n;
+            if (lock.validate(seq, into)) {
+                return;
+            }
+        }
     }
 
     public int at(int x) {
@@ -30,7 +62,7 @@ public final class FixedXYSeries implements XYSeries {
 
     @Override
     public Number getX(int index) {
-        return xFactor*index+xOffset;
+        return xVals[index];
     }
 
     @Override
@@ -38,6 +70,21 @@ public final class FixedXYSeries implements XYSeries {
         return yVals[index];
     }
 
+    @Override
+    public int[] xValues() {
+        return xVals;
+    }
+
+    @Override
+    public int[] yValues() {
+        return yVals;
+    }
+
+    @Override
+    public int start() {
+        return 0;
+    }
+
     @Override
     public String getTitle() {
         return title;
@@ -0,0 +1,24 @@
+package io.github.pulquero.rotordroid;
+
+import com.androidplot.xy.XYSeries;
+
+/**
+ * Series backed by int arrays, readable without boxing.
+ * Writers never wait for readers: readers take a consistent {@link #snapshot(SeriesSnapshot)} instead.
+ */
+public interface IntXYSeries extends XYSeries {
+    /**
+     * Raw backing arrays, only safe to read on the writing thread.
+     * Point i is at index (start()+i), wrapping around at their length.
+     */
+    int[] xValues();
+
+    int[] yValues();
+
+    int start();
+
+    /**
+     * Copies the points in order, retrying if a write happened in the meantime.
+     */
+    void snapshot(SeriesSnapshot into);
+}
@@ -0,0 +1,103 @@
+package io.github.pulquero.rotordroid;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import com.androidplot.ui.RenderStack;
+import com.androidplot.ui.SeriesRenderer;
+import com.androidplot.xy.LineAndPointFormatter;
+import com.androidplot.xy.RectRegion;
+import com.androidplot.xy.XYPlot;
+import com.androidplot.xy.XYSeriesRenderer;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Draws an {@link IntXYSeries} as a single drawLines() batch, from a snapshot of its int arrays.
+ * A {@link WindowedXYSeries} is decimated to the pixel columns of the plot first, so drawing it costs the same at any zoom.
+ */
+public class IntXYSeriesRenderer extends XYSeriesRenderer<IntXYSeries, IntXYSeriesRenderer.Formatter> {
+    private final SeriesSnapshot snapshot = new SeriesSnapshot();
+    private final Map<IntXYSeries, PixelDecimator> decimators = new WeakHashMap<>();
+    private float[] lines = new float[0];
+
+    public IntXYSeriesRenderer(XYPlot plot) {
+        super(plot);
+    }
+
+    @Override
+    protected void onRender(Canvas canvas, RectF plotArea, IntXYSeries series, Formatter formatter, RenderStack stack) {
+        RectRegion bounds = getPlot().getBounds();
+        double minX = bounds.getMinX().doubleValue();
+        SeriesSnapshot points;
+        if (series instanceof WindowedXYSeries) {
+            PixelDecimator decimator = decimators.get(series);
+            if (decimator == null) {
+                decimator = new PixelDecimator();
+                decimators.put(series, decimator);
+            }
+            points = decimator.decimate((WindowedXYSeries) series, minX, bounds.getMaxX().doubleValue(), Math.max((int) plotArea.width(), 1));
+        } else {
+            series.snapshot(snapshot);
+            points = snapshot;
+        }
+        int size = points.size;
+        if (size < 2) {
+            return;
+        }
+        double minY = bounds.getMinY().doubleValue();
+        float scaleX = (float) (plotArea.width() / (bounds.getMaxX().doubleValue() - minX));
+        float scaleY = (float) (plotArea.height() / (bounds.getMaxY().doubleValue() - minY));
+        float offsetX = (float) (plotArea.left - minX*scaleX);
+        float offsetY = (float) (plotArea.bottom + minY*scaleY);
+
+        int numFloats = 4*(size-1);
+        if (lines.length < numFloats) {
+            lines = new float[numFloats];
+        }
+        int[] xVals = points.xs;
+        int[] yVals = points.ys;
+        float prevX = offsetX + xVals[0]*scaleX;
+        float prevY = offsetY - yVals[0]*scaleY;
+        int pos = 0;
+        for (int i=1; i<size; i++) {
+            float x = offsetX + xVals[i]*scaleX;
+            float y = offsetY - yVals[i]*scaleY;
+            lines[pos++] = prevX;
+            lines[pos++] = prevY;
+            lines[pos++] = x;
+            lines[pos++] = y;
+            prevX = x;
+            prevY = y;
+        }
+        canvas.save();
+        canvas.clipRect(plotArea);
+        canvas.drawLines(lines, 0, pos, formatter.getLinePaint());
+        canvas.restore();
+    }
+
+    @Override
+    protected void doDrawLegendIcon(Canvas canvas, RectF rect, Formatter formatter) {
+        float y = rect.top + rect.height()/2;
+        canvas.drawLine(rect.left, y, rect.right, y, formatter.getLinePaint());
+    }
+
+    public static class Formatter extends LineAndPointFormatter {
+        public Formatter(int lineColor) {
+            super(lineColor, null, null, null);
+            getLinePaint().setAntiAlias(false);
+        }
+
+        @Override
+        public Class<? extends SeriesRenderer> getRendererClass() {
+            return IntXYSeriesRenderer.class;
+        }
+
+        @Override
+        public SeriesRenderer doGetRendererInstance(XYPlot plot) {
+            return new IntXYSeriesRenderer(plot);
+        }
+    }
+}
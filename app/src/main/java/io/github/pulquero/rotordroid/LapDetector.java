@@ -0,0 +1,191 @@
+package io.github.pulquero.rotordroid;
+
+/**
+ * Detects passes in the sample stream of a node, independently of the lap counter of the node.
+ * A pass starts when the RSSI reaches the enter level and ends when it drops below the exit level,
+ * and is timed at the middle of its peak. Each sample is processed in constant time.
+ * The history extremum of each sample is included, so peaks between samples aren't missed.
+ * Detected laps are cross-checked against the lap counter of the node.
+ * Not thread-safe, use one per node from its lane.
+ */
+public final class LapDetector {
+    public interface Listener {
+        /**
+         * @param lapMillis time since the previous lap, zero for the first one.
+         */
+        void onLap(int index, int lap, int time, int lapMillis, int peakRssi);
+    }
+
+    /** Laps of the detector and the node closer than this are the same lap. */
+    private static final int MATCH_TOLERANCE_MS = 250;
+    /** How long to wait for the other side to report a lap. */
+    private static final int MATCH_WINDOW_MS = 2000;
+
+    private final int index;
+    private final int enterAt;
+    private final int exitAt;
+    private final int minLapMillis;
+    private final Listener listener;
+
+    private boolean crossing;
+    private int peakRssi;
+    private int peakStart;
+    private int peakEnd;
+    private int laps;
+    private boolean hasLap;
+    private int lastLapTime;
+
+    private int nodeLaps = -1;
+    private boolean detectedPending;
+    private int detectedPendingTime;
+    private boolean nodePending;
+    private int nodePendingTime;
+    private volatile int matched;
+    private volatile int missed;
+    private volatile int extra;
+    private final LatencyHistogram disagreement = new LatencyHistogram();
+
+    /**
+     * @param exitAt must be below enterAt, the difference is the hysteresis.
+     * @param minLapMillis passes closer than this to the previous lap are ignored.
+     */
+    public LapDetector(int index, int enterAt, int exitAt, int minLapMillis, Listener listener) {
+        if (exitAt >= enterAt) {
+            throw new IllegalArgumentException(String.format("Exit level %d must be below enter level %d", exitAt, enterAt));
+        }
+        this.index = index;
+        this.enterAt = enterAt;
+        this.exitAt = exitAt;
+        this.minLapMillis = minLapMillis;
+        this.listener = listener;
+    }
+
+    public void onSample(LapStats stats) {
+        int t = stats.t;
+        if (stats.historyRssi > stats.rssi) {
+            update(stats.historyRssi, t - stats.msSinceHistoryStart, t - stats.msSinceHistoryEnd);
+        }
+        update(stats.rssi, t, t);
+        checkNodeLaps(stats);
+        expire(t);
+    }
+
+    private void update(int rssi, int start, int end) {
+        if (!crossing) {
+            if (rssi >= enterAt) {
+                crossing = true;
+                peakRssi = rssi;
+                peakStart = start;
+                peakEnd = end;
+            }
+            return;
+        }
+        if (rssi > peakRssi) {
+            peakRssi = rssi;
+            peakStart = start;
+            peakEnd = end;
+        } else if (rssi == peakRssi) {
+            peakEnd = end;
+        }
+        if (rssi < exitAt) {
+            crossing = false;
+            pass(peakStart + (peakEnd - peakStart)/2, peakRssi);
+        }
+    }
+
+    private void pass(int time, int rssi) {
+        if (hasLap && time - lastLapTime < minLapMillis) {
+            return;
+        }
+        int lapMillis = hasLap ? time - lastLapTime : 0;
+        laps++;
+        hasLap = true;
+        lastLapTime = time;
+        onDetectedLap(time);
+        listener.onLap(index, laps, time, lapMillis, rssi);
+    }
+
+    private void checkNodeLaps(LapStats stats) {
+        if (nodeLaps < 0 || stats.laps < nodeLaps) {
+            // first sample, or the node was reset
+            nodeLaps = stats.laps;
+        } else if (stats.laps > nodeLaps) {
+            nodeLaps = stats.laps;
+            onNodeLap(stats.t - stats.msSinceLastLap);
+        }
+    }
+
+    private void onDetectedLap(int time) {
+        if (nodePending && Math.abs(time - nodePendingTime) <= MATCH_TOLERANCE_MS) {
+            nodePending = false;
+            match(time - nodePendingTime);
+        } else {
+            if (detectedPending) {
+                extra++;
+            }
+            detectedPending = true;
+            detectedPendingTime = time;
+        }
+    }
+
+    private void onNodeLap(int time) {
+        if (detectedPending && Math.abs(time - detectedPendingTime) <= MATCH_TOLERANCE_MS) {
+            detectedPending = false;
+            match(detectedPendingTime - time);
+        } else {
+            if (nodePending) {
+                missed++;
+            }
+            nodePending = true;
+            nodePendingTime = time;
+        }
+    }
+
+    private void match(int diff) {
+        matched++;
+        disagreement.record(Math.abs(diff));
+    }
+
+    private void expire(int t) {
+        if (detectedPending && t - detectedPendingTime > MATCH_WINDOW_MS) {
+            detectedPending = false;
+            extra++;
+        }
+        if (nodePending && t - nodePendingTime > MATCH_WINDOW_MS) {
+            nodePending = false;
+            missed++;
+        }
+    }
+
+    public int getLaps() {
+        return laps;
+    }
+
+    /**
+     * Laps both the detector and the node agree on.
+     */
+    public int getMatchedLaps() {
+        return matched;
+    }
+
+    /**
+     * Laps counted by the node but not detected.
+     */
+    public int getMissedLaps() {
+        return missed;
+    }
+
+    /**
+     * Laps detected but not counted by the node.
+     */
+    public int getExtraLaps() {
+        return extra;
+    }
+
+    /**
+     * Time difference between matched laps of the detector and the node, in ms.
+     */
+    public LatencyHistogram getDisagreement() {
+        return disagreement;
+    }
+}
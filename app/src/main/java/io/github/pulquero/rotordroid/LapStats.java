@@ -2,8 +2,18 @@ package io.github.pulquero.rotordroid;
 
 final class LapStats {
     int t;
+    int laps;
+    int msSinceLastLap;
     int rssi;
+    int peakRssi;
+    int lastPassPeak;
+    int loopTimeMicros;
+    int flags;
+    int lastPassNadir;
+    int nadirRssi;
     int historyRssi;
     int msSinceHistoryStart;
     int msSinceHistoryEnd;
+    /** Host time of the last lap, filtered over many samples. */
+    int lapTime;
 }
@@ -1,58 +1,75 @@
 package io.github.pulquero.rotordroid;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
+import butterknife.BindArray;
 import butterknife.BindColor;
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import butterknife.OnCheckedChanged;
+import butterknife.OnItemSelected;
+import butterknife.OnLongClick;
 
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.os.Bundle;
-import android.os.SystemClock;
+import android.os.IBinder;
 import android.text.Editable;
 import android.text.TextWatcher;
+import android.view.Choreographer;
+import android.view.View;
 import android.widget.EditText;
+import android.widget.Spinner;
 import android.widget.Switch;
 import android.widget.TextView;
 
+import com.androidplot.Plot;
+import com.androidplot.PlotListener;
 import com.androidplot.util.PixelUtils;
 import com.androidplot.util.Redrawer;
 import com.androidplot.xy.BoundaryMode;
-import com.androidplot.xy.FastLineAndPointRenderer;
 import com.androidplot.xy.PanZoom;
+import com.androidplot.xy.RectRegion;
 import com.androidplot.xy.StepMode;
 import com.androidplot.xy.XYGraphWidget;
 import com.androidplot.xy.XYPlot;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
+import static io.github.pulquero.rotordroid.AcquisitionService.MAX_FREQ;
+import static io.github.pulquero.rotordroid.AcquisitionService.MAX_RSSI;
+import static io.github.pulquero.rotordroid.AcquisitionService.MIN_FREQ;
+import static io.github.pulquero.rotordroid.AcquisitionService.NUM_SAMPLES;
+
+/**
+ * Shows the buffers of the {@link AcquisitionService}, which carries on acquiring while the activity is away.
+ */
 public class MainActivity extends AppCompatActivity {
-    private static final int MIN_FREQ = 5645;
-    private static final int MAX_FREQ = 5945;
-    private static final long SCAN_UPDATE_INTERVAL = 100L;
-    private static final int SCAN_STEP = 2;
+    public static final String EXTRA_REPLAY = "io.github.pulquero.rotordroid.REPLAY";
+    public static final String EXTRA_SIMULATE = "io.github.pulquero.rotordroid.SIMULATE";
     private static final long SIGNAL_UPDATE_INTERVAL = 50L;
-    private static final int NUM_SAMPLES = 200;
-    private ScheduledExecutorService executor;
-    private Future<Node> fNode;
-    private Callable<ScheduledFuture<?>> acquisitionStarter;
-    private ScheduledFuture<?> fStarter;
-
-    private FixedXYSeries spectrumSeries;
-    private FixedXYSeries minSeries;
-    private FixedXYSeries maxSeries;
-    private CircularXYSeries rssiSeries;
-    private CircularXYSeries historySeries;
+    private static final int FOLLOW_TOLERANCE = 1000;
+    private static final long STATS_UPDATE_INTERVAL = 500L;
+    private AcquisitionService service;
+    private boolean started;
+
     private Redrawer redrawer;
-    private long startTime;
+    private int lastFollowTime;
+    private final LatencyHistogram frameTimes = new LatencyHistogram();
+    private final LatencyHistogram renderTimes = new LatencyHistogram();
+    private long lastFrameTime;
+    private long renderStartTime;
+    private UiUpdateBus uiBus;
 
     @BindColor(R.color.spectrum)
     int spectrumColor;
@@ -60,215 +77,391 @@ public class MainActivity extends AppCompatActivity {
     int minColor;
     @BindColor(R.color.max)
     int maxColor;
+    @BindColor(R.color.mean)
+    int meanColor;
+    @BindColor(R.color.p95)
+    int p95Color;
     @BindColor(R.color.rssi)
     int rssiColor;
     @BindColor(R.color.history)
     int historyColor;
+    @BindArray(R.array.node_colors)
+    int[] nodeColors;
 
     @BindView(R.id.freqSelector)
     EditText freqSelector;
     @BindView(R.id.scanSwitch)
     Switch scanSwitch;
+    @BindView(R.id.channelSwitch)
+    Switch channelSwitch;
+    @BindView(R.id.compareSwitch)
+    Switch compareSwitch;
     @BindView(R.id.plot)
     XYPlot plot;
     @BindView(R.id.messages)
     TextView msgLabel;
+    @BindView(R.id.statsSwitch)
+    Switch statsSwitch;
+    @BindView(R.id.streamSwitch)
+    Switch streamSwitch;
+    @BindView(R.id.stats)
+    TextView statsPanel;
+    @BindView(R.id.waterfall)
+    WaterfallView waterfallView;
+    @BindView(R.id.channelOptions)
+    View channelOptions;
+    @BindView(R.id.planSelector)
+    Spinner planSelector;
+    @BindView(R.id.dwellSelector)
+    Spinner dwellSelector;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         ButterKnife.bind(this);
-        plot.setRangeBoundaries(0, 150, BoundaryMode.FIXED);
+        plot.setRangeBoundaries(0, MAX_RSSI, BoundaryMode.FIXED);
         plot.setRangeStep(StepMode.INCREMENT_BY_VAL, 10.0);
         plot.getGraph().getLineLabelStyle(XYGraphWidget.Edge.BOTTOM).getPaint().setTextSize(PixelUtils.spToPix(10.0f));
         plot.getGraph().getLineLabelStyle(XYGraphWidget.Edge.LEFT).getPaint().setTextSize(PixelUtils.spToPix(10.0f));
         plot.getLegend().getTextPaint().setTextSize(PixelUtils.spToPix(10.0f));
         PanZoom.attach(plot);
+        plot.addListener(new PlotListener() {
+            @Override
+            public void onBeforeDraw(Plot source, Canvas canvas) {
+                renderStartTime = System.nanoTime();
+            }
+
+            @Override
+            public void onAfterDraw(Plot source, Canvas canvas) {
+                renderTimes.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - renderStartTime));
+            }
+        });
         redrawer = new Redrawer(plot, 25, false);
-        executor = Executors.newSingleThreadScheduledExecutor();
-        fNode = executor.submit(() -> Node.connect(this));
-        acquisitionStarter = scanAcquisition();
+        uiBus = new UiUpdateBus(uiSink);
+        Intent serviceIntent = new Intent(this, AcquisitionService.class);
+        ContextCompat.startForegroundService(this, serviceIntent);
+        bindService(serviceIntent, serviceConnection, BIND_AUTO_CREATE);
     }
 
     @Override
     protected void onStart() {
         super.onStart();
-        if (rssiSeries != null) {
-            rssiSeries.reset();
-        }
-        if (historySeries != null) {
-            historySeries.reset();
+        started = true;
+        if (service != null) {
+            service.setUiListener(uiListener);
         }
-        startTime = SystemClock.elapsedRealtime();
-        executor.execute(() -> {
-            try {
-                Node node = fNode.get();
-                int freq = node.getFrequency();
-                String freqValue = Integer.toString(freq);
-                runOnUiThread(() -> freqSelector.setText(freqValue));
-            } catch (ExecutionException | InterruptedException | IOException ex) {
-                runOnUiThread(() -> msgLabel.setText(ex.getMessage()));
-            }
-        });
     }
 
     @Override
     protected void onResume() {
         super.onResume();
         redrawer.start();
-        try {
-            fStarter = acquisitionStarter.call();
-        } catch (Exception ex) {
-            runOnUiThread(() -> msgLabel.setText(ex.getMessage()));
+        lastFrameTime = 0L;
+        Choreographer.getInstance().postFrameCallback(frameTimer);
+        if (statsSwitch.isChecked()) {
+            statsUpdater.run();
         }
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        if (fStarter != null) {
-            fStarter.cancel(true);
-            fStarter = null;
-        }
         redrawer.pause();
-        clearSeries();
+        Choreographer.getInstance().removeFrameCallback(frameTimer);
+        statsPanel.removeCallbacks(statsUpdater);
     }
 
     @Override
     protected void onStop() {
         super.onStop();
+        started = false;
+        if (service != null) {
+            service.setUiListener(null);
+        }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        try {
-            Node node = fNode.get();
-            node.close();
-        } catch (ExecutionException | InterruptedException | IOException ignore) {
+        uiBus.clear();
+        unbindService(serviceConnection);
+        service = null;
+        if (isFinishing()) {
+            // not just a configuration change
+            stopService(new Intent(this, AcquisitionService.class));
         }
-        executor.shutdown();
     }
 
-    private Callable<ScheduledFuture<?>> scanAcquisition() {
-        return () -> {
-            clearSeries();
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            AcquisitionService connected = ((AcquisitionService.LocalBinder) binder).getService();
+            connected.open(getIntent().getStringExtra(EXTRA_REPLAY), getIntent().getIntExtra(EXTRA_SIMULATE, 0));
+            int mode = connected.getMode();
+            // the switches follow the service, which isn't set yet so onScanSwitch() leaves its mode alone
+            channelSwitch.setChecked(mode == AcquisitionService.MODE_CHANNELS);
+            compareSwitch.setChecked(mode == AcquisitionService.MODE_COMPARE);
+            scanSwitch.setChecked(mode == AcquisitionService.MODE_SCAN || mode == AcquisitionService.MODE_CHANNELS);
+            streamSwitch.setChecked(connected.isStreaming());
+            for (int i=0; i<AcquisitionService.CHANNEL_PLANS.length; i++) {
+                if (AcquisitionService.CHANNEL_PLANS[i] == connected.getChannelPlan()) {
+                    planSelector.setSelection(i);
+                }
+            }
+            for (int i=0; i<AcquisitionService.CHANNEL_DWELLS_MS.length; i++) {
+                if (AcquisitionService.CHANNEL_DWELLS_MS[i] == connected.getChannelDwell()) {
+                    dwellSelector.setSelection(i);
+                }
+            }
+            service = connected;
+            showMode();
+            if (started) {
+                service.setUiListener(uiListener);
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            service = null;
+        }
+    };
+
+    /**
+     * Shows the buffers of the current mode of the service, which already hold what was acquired so far.
+     */
+    private void showMode() {
+        plot.clear();
+        int mode = service.getMode();
+        if (mode == AcquisitionService.MODE_CHANNELS) {
             plot.setDomainStep(StepMode.INCREMENT_BY_VAL, 25.0);
             plot.setDomainBoundaries(MIN_FREQ+5, MAX_FREQ+5, BoundaryMode.FIXED);
-            minSeries = new FixedXYSeries("Min", MIN_FREQ, SCAN_STEP, (MAX_FREQ - MIN_FREQ)/SCAN_STEP + 1);
-            plot.addSeries(minSeries, new FastLineAndPointRenderer.Formatter(minColor, null, null));
-            maxSeries = new FixedXYSeries("Max", MIN_FREQ, SCAN_STEP, (MAX_FREQ - MIN_FREQ)/SCAN_STEP + 1);
-            plot.addSeries(maxSeries, new FastLineAndPointRenderer.Formatter(maxColor, null, null));
-            spectrumSeries = new FixedXYSeries("Live", MIN_FREQ, SCAN_STEP, (MAX_FREQ - MIN_FREQ)/SCAN_STEP + 1);
-            plot.addSeries(spectrumSeries, new FastLineAndPointRenderer.Formatter(spectrumColor, null, null));
+            plot.addSeries(service.getSpectrumSeries(), new IntXYSeriesRenderer.Formatter(spectrumColor));
             plot.getGraph().setLineLabelRenderer(XYGraphWidget.Edge.BOTTOM, new XYGraphWidget.LineLabelRenderer());
-            return executor.scheduleWithFixedDelay(() -> {
-                try {
-                    Node node = fNode.get();
-                    int freq = node.getFrequency();
-                    LapStats stats = node.readLapStats(currentTime());
-
-                    spectrumSeries.set(freq, stats.rssi);
-                    minSeries.set(freq, minSeries.at(freq) == 0 ? stats.rssi : Math.min(stats.rssi, minSeries.at(freq)));
-                    maxSeries.set(freq, Math.max(stats.rssi, maxSeries.at(freq)));
-                    freq+=SCAN_STEP;
-                    if (freq > MAX_FREQ) {
-                        freq = MIN_FREQ;
-                    }
-                    node.setFrequency(freq);
-                    String freqValue = Integer.toString(freq);
-                    runOnUiThread(() -> freqSelector.setText(freqValue));
-                } catch (ExecutionException | InterruptedException | IOException ex) {
-                    runOnUiThread(() -> msgLabel.setText(ex.getMessage()));
-                }
-            }, 0L, SCAN_UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-        };
-    }
-
-    private Callable<ScheduledFuture<?>> signalAcquisition() {
-        return () -> {
-            clearSeries();
+            waterfallView.setVisibility(View.GONE);
+            waterfallView.setWaterfall(null);
+            channelOptions.setVisibility(View.VISIBLE);
+        } else if (mode == AcquisitionService.MODE_SCAN) {
+            plot.setDomainStep(StepMode.INCREMENT_BY_VAL, 25.0);
+            plot.setDomainBoundaries(MIN_FREQ+5, MAX_FREQ+5, BoundaryMode.FIXED);
+            plot.addSeries(service.getMinSeries(), new IntXYSeriesRenderer.Formatter(minColor));
+            plot.addSeries(service.getMaxSeries(), new IntXYSeriesRenderer.Formatter(maxColor));
+            plot.addSeries(service.getMeanSeries(), new IntXYSeriesRenderer.Formatter(meanColor));
+            plot.addSeries(service.getP95Series(), new IntXYSeriesRenderer.Formatter(p95Color));
+            plot.addSeries(service.getSpectrumSeries(), new IntXYSeriesRenderer.Formatter(spectrumColor));
+            plot.getGraph().setLineLabelRenderer(XYGraphWidget.Edge.BOTTOM, new XYGraphWidget.LineLabelRenderer());
+            waterfallView.setWaterfall(service.getWaterfall());
+            waterfallView.setVisibility(View.VISIBLE);
+            channelOptions.setVisibility(View.GONE);
+        } else {
             plot.setDomainStep(StepMode.INCREMENT_BY_VAL, 1000.0);
-            long time = currentTime();
-            plot.setDomainBoundaries(time - NUM_SAMPLES*SIGNAL_UPDATE_INTERVAL, time, BoundaryMode.FIXED);
-            rssiSeries = new CircularXYSeries("Live", NUM_SAMPLES);
-            plot.addSeries(rssiSeries, new FastLineAndPointRenderer.Formatter(rssiColor, null, null));
-            historySeries = new CircularXYSeries("History", NUM_SAMPLES);
-            plot.addSeries(historySeries, new FastLineAndPointRenderer.Formatter(historyColor, null, null));
+            if (mode == AcquisitionService.MODE_COMPARE) {
+                TieredXYSeries[] rssi = service.getCompareRssiSeries();
+                CircularXYSeries[] history = service.getCompareHistorySeries();
+                // shown again once the nodes are connected
+                for (int i=0; rssi != null && i<rssi.length; i++) {
+                    int color = nodeColors[i % nodeColors.length];
+                    plot.addSeries(rssi[i], new IntXYSeriesRenderer.Formatter(color));
+                    // peaks in the same colour, fainter
+                    plot.addSeries(history[i], new IntXYSeriesRenderer.Formatter(color & 0x00FFFFFF | 0x80000000));
+                }
+            } else {
+                plot.addSeries(service.getRssiSeries(), new IntXYSeriesRenderer.Formatter(rssiColor));
+                plot.addSeries(service.getHistorySeries(), new IntXYSeriesRenderer.Formatter(historyColor));
+            }
             plot.getGraph().setLineLabelRenderer(XYGraphWidget.Edge.BOTTOM, new XYGraphWidget.LineLabelRenderer() {
                 @Override
                 protected void drawLabel(Canvas canvas, String text, Paint paint, float x, float y, boolean isOrigin) {
                 }
             });
-            return executor.scheduleWithFixedDelay(() -> {
-                try {
-                    Node node = fNode.get();
-                    long currentTime = currentTime();
-                    LapStats stats = node.readLapStats(currentTime);
-
-                    rssiSeries.add(stats.t, stats.rssi);
-                    if(stats.historyRssi != 0) {
-                        historySeries.add(stats.t - stats.msSinceHistoryStart, stats.historyRssi);
-                        if (stats.msSinceHistoryStart != stats.msSinceHistoryEnd) {
-                            historySeries.add(stats.t - stats.msSinceHistoryEnd, stats.historyRssi);
-                        }
-                    }
-                    runOnUiThread(() ->
-                        plot.setDomainBoundaries(currentTime - NUM_SAMPLES*SIGNAL_UPDATE_INTERVAL, currentTime, BoundaryMode.FIXED)
-                    );
-                } catch (ExecutionException | InterruptedException | IOException ex) {
-                    runOnUiThread(() -> msgLabel.setText(ex.getMessage()));
-                }
-            }, 0L, SIGNAL_UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-        };
-    }
-
-    private int currentTime() {
-        return (int) (SystemClock.elapsedRealtime() - startTime);
+            NodeManager nodes = service.getNodes();
+            int time = nodes != null ? nodes.currentTime() : 0;
+            lastFollowTime = time;
+            plot.setDomainBoundaries(time - NUM_SAMPLES*SIGNAL_UPDATE_INTERVAL, time, BoundaryMode.FIXED);
+            waterfallView.setVisibility(View.GONE);
+            waterfallView.setWaterfall(null);
+            channelOptions.setVisibility(View.GONE);
+        }
     }
 
-    @OnCheckedChanged(R.id.scanSwitch)
+    @OnCheckedChanged({R.id.scanSwitch, R.id.channelSwitch, R.id.compareSwitch})
     public void onScanSwitch() {
-        fStarter.cancel(true);
+        channelSwitch.setEnabled(scanSwitch.isChecked());
+        compareSwitch.setEnabled(!scanSwitch.isChecked());
         if(scanSwitch.isChecked()) {
             freqSelector.setEnabled(false);
             freqSelector.removeTextChangedListener(updateFrequencyListener);
-            acquisitionStarter = scanAcquisition();
         } else {
+            // also called for the other switches, so it might already be listening
+            freqSelector.removeTextChangedListener(updateFrequencyListener);
             freqSelector.addTextChangedListener(updateFrequencyListener);
             freqSelector.setEnabled(true);
-            acquisitionStarter = signalAcquisition();
         }
-        clearSeries();
-        try {
-            fStarter = acquisitionStarter.call();
-        } catch (Exception ex) {
-            runOnUiThread(() -> msgLabel.setText(ex.getMessage()));
+        if (service != null) {
+            int mode;
+            if (!scanSwitch.isChecked()) {
+                mode = compareSwitch.isChecked() ? AcquisitionService.MODE_COMPARE : AcquisitionService.MODE_SIGNAL;
+            } else if (channelSwitch.isChecked()) {
+                mode = AcquisitionService.MODE_CHANNELS;
+            } else {
+                mode = AcquisitionService.MODE_SCAN;
+            }
+            service.setMode(mode);
+            showMode();
         }
     }
 
-    private void clearSeries() {
-        if (spectrumSeries != null) {
-            plot.removeSeries(spectrumSeries);
-            spectrumSeries = null;
+    @OnItemSelected(R.id.planSelector)
+    public void onPlanSelected(int position) {
+        ChannelPlan plan = AcquisitionService.CHANNEL_PLANS[position];
+        // also called once laid out, with the selection the service already has
+        if (service != null && service.getChannelPlan() != plan) {
+            service.setChannelPlan(plan);
         }
-        if (minSeries != null) {
-            plot.removeSeries(minSeries);
-            minSeries = null;
+    }
+
+    @OnItemSelected(R.id.dwellSelector)
+    public void onDwellSelected(int position) {
+        long dwellMs = AcquisitionService.CHANNEL_DWELLS_MS[position];
+        if (service != null && service.getChannelDwell() != dwellMs) {
+            service.setChannelDwell(dwellMs);
         }
-        if (maxSeries != null) {
-            plot.removeSeries(maxSeries);
-            maxSeries = null;
+    }
+
+    @OnCheckedChanged(R.id.statsSwitch)
+    public void onStatsSwitch() {
+        statsPanel.removeCallbacks(statsUpdater);
+        if (statsSwitch.isChecked()) {
+            statsPanel.setVisibility(View.VISIBLE);
+            statsUpdater.run();
+        } else {
+            statsPanel.setVisibility(View.GONE);
         }
-        if (rssiSeries != null) {
-            plot.removeSeries(rssiSeries);
-            rssiSeries = null;
+    }
+
+    @OnCheckedChanged(R.id.streamSwitch)
+    public void onStreamSwitch() {
+        if (service != null) {
+            service.setStreaming(streamSwitch.isChecked());
         }
-        if (historySeries != null) {
-            plot.removeSeries(historySeries);
-            historySeries = null;
+    }
+
+    @OnLongClick(R.id.stats)
+    public boolean onExportStats() {
+        if (service == null) {
+            return false;
         }
+        SampleScheduler sampler = service.getSampler();
+        LapDetector[] lapDetectors = service.getLapDetectors();
+        service.withNodes(nodes -> {
+            File dir = getExternalFilesDir("stats");
+            if (dir == null) {
+                dir = new File(getFilesDir(), "stats");
+            }
+            dir.mkdirs();
+            String name = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+            File file = new File(dir, "stats-" + name + ".csv");
+            String msg;
+            try (Writer out = new FileWriter(file)) {
+                StatsReport.writeCsv(out, nodes, sampler, lapDetectors, frameTimes, renderTimes);
+                msg = "Exported " + file.getPath();
+            } catch (IOException ex) {
+                msg = ex.getMessage();
+            }
+            uiBus.postMessage(msg);
+        });
+        return true;
+    }
+
+    private final Runnable statsUpdater = new Runnable() {
+        @Override
+        public void run() {
+            NodeManager nodes = service != null ? service.getNodes() : null;
+            if (nodes != null) {
+                statsPanel.setText(StatsReport.format(nodes, service.getSampler(), service.getLapDetectors(), frameTimes, renderTimes));
+            }
+            statsPanel.postDelayed(this, STATS_UPDATE_INTERVAL);
+        }
+    };
+
+    private final Choreographer.FrameCallback frameTimer = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (lastFrameTime != 0L) {
+                frameTimes.record(TimeUnit.NANOSECONDS.toMicros(frameTimeNanos - lastFrameTime));
+            }
+            lastFrameTime = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    private final AcquisitionService.UiListener uiListener = new AcquisitionService.UiListener() {
+        @Override
+        public void onFrequency(int freq) {
+            uiBus.postFrequency(freq);
+        }
+
+        @Override
+        public void onFollowTime(int time) {
+            uiBus.postFollowTime(time);
+        }
+
+        @Override
+        public void onMessage(String msg) {
+            uiBus.postMessage(msg);
+        }
+
+        @Override
+        public void onSweep() {
+            waterfallView.onSweep();
+        }
+
+        @Override
+        public void onBuffersChanged() {
+            runOnUiThread(() -> {
+                if (service != null) {
+                    showMode();
+                }
+            });
+        }
+    };
+
+    private final UiUpdateBus.Sink uiSink = new UiUpdateBus.Sink() {
+        @Override
+        public void onFrequency(int freq) {
+            String freqValue = Integer.toString(freq);
+            // setText triggers a layout
+            if (!freqValue.contentEquals(freqSelector.getText())) {
+                freqSelector.setText(freqValue);
+            }
+        }
+
+        @Override
+        public void onFollowTime(int time) {
+            followDomain(time);
+            if (service != null) {
+                service.onFollowed();
+            }
+        }
+
+        @Override
+        public void onMessage(String msg) {
+            msgLabel.setText(msg);
+        }
+    };
+
+    /**
+     * Scrolls the domain to the latest time, keeping its zoom, unless it has been panned back into the history.
+     */
+    private void followDomain(int time) {
+        RectRegion bounds = plot.getBounds();
+        double minX = bounds.getMinX().doubleValue();
+        double maxX = bounds.getMaxX().doubleValue();
+        if (maxX >= lastFollowTime - FOLLOW_TOLERANCE) {
+            double width = maxX - minX;
+            plot.setDomainBoundaries(time - width, time, BoundaryMode.FIXED);
+        }
+        lastFollowTime = Math.max(lastFollowTime, time);
     }
 
     final TextWatcher updateFrequencyListener = new TextWatcher() {
@@ -287,33 +480,8 @@ public class MainActivity extends AppCompatActivity {
                 return;
             }
             int freq = Integer.parseInt(freqValue);
-            if (freq >= MIN_FREQ && freq <= MAX_FREQ) {
-                if(rssiSeries != null) {
-                    plot.removeSeries(rssiSeries);
-                }
-                if (historySeries != null) {
-                    plot.removeSeries(historySeries);
-                }
-                executor.execute(() -> {
-                    try {
-                        Node node = fNode.get();
-                        node.setFrequency(freq);
-                        if (rssiSeries != null) {
-                            rssiSeries.reset();
-                        }
-                        if (historySeries != null) {
-                            historySeries.reset();
-                        }
-                    } catch (ExecutionException | InterruptedException | IOException ex) {
-                        runOnUiThread(() -> msgLabel.setText(ex.getMessage()));
-                    }
-                });
-                if(rssiSeries != null) {
-                    plot.addSeries(rssiSeries, new FastLineAndPointRenderer.Formatter(rssiColor, null, null));
-                }
-                if (historySeries != null) {
-                    plot.addSeries(historySeries, new FastLineAndPointRenderer.Formatter(historyColor, null, null));
-                }
+            if (freq >= MIN_FREQ && freq <= MAX_FREQ && service != null) {
+                service.setFrequency(freq);
             }
         }
     };
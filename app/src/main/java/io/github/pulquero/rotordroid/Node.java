@@ -1,139 +1,243 @@
 package io.github.pulquero.rotordroid;
 
-import android.content.Context;
-import android.hardware.usb.UsbDeviceConnection;
-import android.hardware.usb.UsbManager;
-
-import com.hoho.android.usbserial.driver.UsbSerialDriver;
-import com.hoho.android.usbserial.driver.UsbSerialPort;
-import com.hoho.android.usbserial.driver.UsbSerialProber;
-
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class Node implements Closeable {
-    private static final byte READ_FREQUENCY = 0x03;
-    private static final byte READ_LAP_STATS = 0x05;
-    private static final byte WRITE_FREQUENCY = 0x51;
+    static final byte READ_FREQUENCY = 0x03;
+    static final byte READ_LAP_STATS = 0x05;
+    static final byte WRITE_FREQUENCY = 0x51;
+    static final int LAP_STATS_SIZE = 16;
     private static final int TIMEOUT = 100;
+    private static final long PROBE_RETRY_MS = 10L;
+
+    private final Transport transport;
+    private final CommandEngine engine;
+    private int frequency;
+    private volatile int tunedFrequency;
+    private final LatencyHistogram frequencyRtt = new LatencyHistogram();
+    private final LatencyHistogram lapStatsRtt = new LatencyHistogram();
+    private final LatencyHistogram loopTimes = new LatencyHistogram();
+    private final ClockSync clockSync = new ClockSync();
+    private final CommandEngine.ResponseHandler frequencyHandler = (buf, offset, target, tag, rttNanos) -> {
+        frequency = read16(buf, offset);
+        frequencyRtt.record(TimeUnit.NANOSECONDS.toMicros(rttNanos));
+    };
+    private final CommandEngine.ResponseHandler lapStatsHandler = (buf, offset, target, tag, rttNanos) -> {
+        LapStats stats = (LapStats) target;
+        decodeLapStats(buf, offset, tag, rttNanos, stats);
+        stats.t = (int) Math.round(clockSync.onLapStats(System.nanoTime(), rttNanos, stats.laps, stats.msSinceLastLap));
+        stats.lapTime = (int) Math.round(clockSync.lapTime());
+        lapStatsRtt.record(TimeUnit.NANOSECONDS.toMicros(rttNanos));
+        loopTimes.record(stats.loopTimeMicros);
+    };
+
+    public Node(Transport transport) {
+        this.transport = transport;
+        this.engine = new CommandEngine(transport, TIMEOUT);
+    }
 
-    private final UsbSerialPort port;
-
-    private Node(UsbSerialPort port) {
-        this.port = port;
+    public void setFrequency(int freq) throws IOException {
+        engine.queueWrite16(WRITE_FREQUENCY, freq);
+        engine.flush();
+        tunedFrequency = freq;
     }
 
-    public static Node connect(Context ctx) throws IOException {
-        UsbManager manager = (UsbManager) ctx.getSystemService(Context.USB_SERVICE);
-        List<UsbSerialDriver> availableDrivers = UsbSerialProber.getDefaultProber().findAllDrivers(manager);
-        if (availableDrivers.isEmpty()) {
-            throw new IOException("No compatible USB devices");
-        }
+    public int getFrequency() throws IOException {
+        engine.queueRead(READ_FREQUENCY, 2, frequencyHandler, null, 0L);
+        engine.execute();
+        tunedFrequency = frequency;
+        return frequency;
+    }
 
-        // Open a connection to the first available driver.
-        UsbSerialDriver driver = availableDrivers.get(0);
-        if (!manager.hasPermission(driver.getDevice())) {
-            throw new IOException("No permission for USB device");
-        }
-        UsbDeviceConnection connection = manager.openDevice(driver.getDevice());
-        if (connection == null) {
-            throw new IOException("Failed to open USB device");
+    /**
+     * Polls the frequency until the node gives a valid reply, as it may still be booting after its port was opened.
+     * @return the frequency.
+     */
+    public int awaitReady(long timeout, TimeUnit unit) throws IOException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            try {
+                return getFrequency();
+            } catch (IOException ex) {
+                if (System.nanoTime() - deadline >= 0L) {
+                    throw ex;
+                }
+            }
+            try {
+                // only reached when failing fast, timeouts already pace the polling
+                Thread.sleep(PROBE_RETRY_MS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for node", ex);
+            }
         }
+    }
 
-        UsbSerialPort port = driver.getPorts().get(0); // Most devices have just one fPort (fPort 0)
-        port.open(connection);
-        port.setParameters(115200, UsbSerialPort.DATABITS_8, UsbSerialPort.STOPBITS_1, UsbSerialPort.PARITY_NONE);
-        try {
-            Thread.sleep(2000);
-        } catch (InterruptedException e) {
-            // ignore
-        }
-        return new Node(port);
+    /**
+     * Last frequency set or read, without a round trip.
+     */
+    public int getTunedFrequency() {
+        return tunedFrequency;
     }
 
-    public void setFrequency(int freq) throws IOException {
-        byte[] writeFreqCmd = writeCommand(WRITE_FREQUENCY, 2);
-        write16(writeFreqCmd, 1, freq);
-        addChecksum(writeFreqCmd);
-        port.write(writeFreqCmd, TIMEOUT);
+    public LapStats readLapStats(long currentTime) throws IOException {
+        return readLapStats(currentTime, new LapStats());
     }
 
-    public int getFrequency() throws IOException {
-        byte[] buf = readCommand(READ_FREQUENCY, 2);
-        return read16(buf, 0);
+    /**
+     * Decodes into the given instance, allowing it to be reused between calls.
+     */
+    public LapStats readLapStats(long currentTime, LapStats stats) throws IOException {
+        queueLapStats(currentTime, stats);
+        engine.execute();
+        return stats;
     }
 
-    public LapStats readLapStats(long currentTime) throws IOException {
-        LapStats stats = new LapStats();
-        long sendTime = System.nanoTime();
-        byte[] buf = readCommand(READ_LAP_STATS, 16);
-        long recvTime = System.nanoTime();
-        long delayMs = TimeUnit.NANOSECONDS.toMillis((recvTime - sendTime)/2);
-        stats.t = (int) (currentTime + delayMs);
-        byte laps = buf[0];
-        int msSinceLastLap = read16(buf, 1);
-        stats.rssi = buf[3];
-        byte peakRssi = buf[4];
-        byte lastPassPeak = buf[5];
-        int loopTimeMicros = read16(buf, 6);
-        byte flags = buf[8];
-        byte lastPassNadir = buf[9];
-        byte nadirRssi = buf[10];
-        stats.historyRssi = buf[11];
-        stats.msSinceHistoryStart = read16(buf, 12);
-        stats.msSinceHistoryEnd = read16(buf, 14);
+    /**
+     * Reads the lap stats for the current frequency then tunes to the next one, in a single write.
+     */
+    public LapStats readLapStatsAndSetFrequency(long currentTime, int nextFreq, LapStats stats) throws IOException {
+        queueLapStats(currentTime, stats);
+        engine.queueWrite16(WRITE_FREQUENCY, nextFreq);
+        engine.execute();
+        tunedFrequency = nextFreq;
         return stats;
     }
 
-    private byte[] readCommand(byte cmd, int payloadSize) throws IOException {
-        port.write(new byte[] {cmd}, TIMEOUT);
-        byte[] buf = new byte[20];
-        int len = port.read(buf, TIMEOUT);
-        if (len != payloadSize+1) {
-            throw new IOException(String.format("%h: Unexpected response size %d", cmd, len));
-        }
-        byte checksum = buf[payloadSize];
-        byte expectedChecksum = calculateChecksum(buf, 0, len-1);
-        if (checksum != expectedChecksum) {
-            throw new IOException(String.format("%h: Invalid checksum", cmd));
-        }
-        return buf;
+    /**
+     * Queues a lap stats request, sent on the next {@link #flush()}.
+     * The stats are decoded into the given instance by {@link #awaitResponses()}.
+     */
+    public void requestLapStats(long currentTime, LapStats stats) {
+        queueLapStats(currentTime, stats);
     }
 
-    public void close() throws IOException {
-        port.close();
+    /**
+     * Queues a frequency change, sent on the next {@link #flush()}.
+     */
+    public void requestFrequency(int freq) {
+        engine.queueWrite16(WRITE_FREQUENCY, freq);
+        tunedFrequency = freq;
+    }
+
+    private void queueLapStats(long currentTime, LapStats stats) {
+        clockSync.onRequest(currentTime, System.nanoTime());
+        engine.queueRead(READ_LAP_STATS, LAP_STATS_SIZE, lapStatsHandler, stats, currentTime);
+    }
+
+    public int pendingRequests() {
+        return engine.pending();
+    }
+
+    public long receivedFrames() {
+        return engine.frames();
+    }
+
+    public long droppedFrames() {
+        return engine.droppedFrames();
+    }
+
+    public long resyncedFrames() {
+        return engine.resyncs();
+    }
+
+    public long skippedBytes() {
+        return engine.skippedBytes();
+    }
+
+    /**
+     * Round trip times of frequency reads, in microseconds.
+     */
+    public LatencyHistogram getFrequencyRtt() {
+        return frequencyRtt;
+    }
+
+    /**
+     * Round trip times of lap stats reads, in microseconds.
+     * When pipelined, a response's round trip includes waiting behind the ones before it.
+     */
+    public LatencyHistogram getLapStatsRtt() {
+        return lapStatsRtt;
+    }
+
+    /**
+     * Loop times reported by the node firmware, in microseconds.
+     */
+    public LatencyHistogram getLoopTimes() {
+        return loopTimes;
     }
 
-    private static byte[] writeCommand(byte cmd, int payloadSize) {
-        byte[] buf = new byte[1+payloadSize+1];
-        buf[0] = cmd;
-        return buf;
+    public void flush() throws IOException {
+        engine.flush();
     }
 
-    private static int write16(byte[] buf, int pos, int data) {
+    public void awaitResponses() throws IOException {
+        engine.awaitResponses();
+    }
+
+    static void decodeLapStats(byte[] buf, int offset, long currentTime, long rttNanos, LapStats stats) {
+        long delayMs = TimeUnit.NANOSECONDS.toMillis(rttNanos/2);
+        stats.t = (int) (currentTime + delayMs);
+        stats.laps = buf[offset] & 0xFF;
+        stats.msSinceLastLap = read16(buf, offset+1);
+        stats.rssi = buf[offset+3] & 0xFF;
+        stats.peakRssi = buf[offset+4] & 0xFF;
+        stats.lastPassPeak = buf[offset+5] & 0xFF;
+        stats.loopTimeMicros = read16(buf, offset+6);
+        stats.flags = buf[offset+8] & 0xFF;
+        stats.lastPassNadir = buf[offset+9] & 0xFF;
+        stats.nadirRssi = buf[offset+10] & 0xFF;
+        stats.historyRssi = buf[offset+11] & 0xFF;
+        stats.msSinceHistoryStart = read16(buf, offset+12);
+        stats.msSinceHistoryEnd = read16(buf, offset+14);
+    }
+
+    /**
+     * Inverse of the lap stats decoding, for stand-in transports.
+     */
+    static void encodeLapStats(LapStats stats, byte[] buf, int offset) {
+        buf[offset] = (byte) stats.laps;
+        write16(buf, offset+1, stats.msSinceLastLap);
+        buf[offset+3] = (byte) stats.rssi;
+        buf[offset+4] = (byte) stats.peakRssi;
+        buf[offset+5] = (byte) stats.lastPassPeak;
+        write16(buf, offset+6, stats.loopTimeMicros);
+        buf[offset+8] = (byte) stats.flags;
+        buf[offset+9] = (byte) stats.lastPassNadir;
+        buf[offset+10] = (byte) stats.nadirRssi;
+        buf[offset+11] = (byte) stats.historyRssi;
+        write16(buf, offset+12, stats.msSinceHistoryStart);
+        write16(buf, offset+14, stats.msSinceHistoryEnd);
+        buf[offset+LAP_STATS_SIZE] = calculateChecksum(buf, offset, LAP_STATS_SIZE);
+    }
+
+    public void close() throws IOException {
+        engine.clear();
+        transport.close();
+    }
+
+    static int write16(byte[] buf, int pos, int data) {
         buf[pos++] = (byte) (data >> 8);
         buf[pos++] = (byte) (data & 0xFF);
         return pos;
     }
 
-    private static int read16(byte[] buf, int pos) {
-        int result = buf[pos++];
+    /**
+     * Unsigned.
+     */
+    static int read16(byte[] buf, int pos) {
+        int result = buf[pos++] & 0xFF;
         result = (result << 8) | (buf[pos++] & 0xFF);
         return result;
     }
 
-    private static byte calculateChecksum(byte[] buf, int start, int len) {
+    static byte calculateChecksum(byte[] buf, int start, int len) {
         int checksum = 0;
         for(int i=start; i<start+len; i++) {
             checksum += (buf[i] & 0xFF);
         }
         return (byte) (checksum & 0xFF);
     }
-
-    private static void addChecksum(byte[] buf) {
-        byte checksum = calculateChecksum(buf, 1, buf.length-2);
-        buf[buf.length-1] = checksum;
-    }
 }
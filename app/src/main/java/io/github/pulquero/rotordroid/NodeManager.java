@@ -0,0 +1,272 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Owns a set of nodes, each with its own I/O lane (thread) so that a slow node doesn't stall the others.
+ * All samples are timestamped against the same time origin.
+ * A node can be replaced by a reconnected one, and tasks carry on against the replacement.
+ */
+public final class NodeManager implements Closeable {
+    public interface NodeTask {
+        void run(int index, Node node) throws IOException;
+    }
+
+    public interface SampleListener {
+        /**
+         * Called on the lane of the node, the stats instance is reused for the next sample.
+         */
+        void onSample(int index, LapStats stats);
+    }
+
+    public interface ErrorListener {
+        void onError(int index, Exception ex);
+    }
+
+    private final AtomicReferenceArray<Node> nodes;
+    private final ScheduledExecutorService[] lanes;
+    private final LapStats[] lapStats;
+    private final LatencyHistogram[] lateness;
+    private final List<SampleScheduler> schedulers = new ArrayList<>();
+    private final AtomicLongArray errors;
+    private final List<Future<?>> tasks = new ArrayList<>();
+    private volatile long timeOrigin = System.nanoTime();
+    private volatile ErrorListener errorListener;
+    private volatile SessionRecorder recorder;
+
+    public NodeManager(List<? extends Transport> transports) {
+        int n = transports.size();
+        nodes = new AtomicReferenceArray<>(n);
+        lanes = new ScheduledExecutorService[n];
+        lapStats = new LapStats[n];
+        lateness = new LatencyHistogram[n];
+        errors = new AtomicLongArray(n);
+        for (int i=0; i<n; i++) {
+            nodes.set(i, new Node(transports.get(i)));
+            lanes[i] = Executors.newSingleThreadScheduledExecutor();
+            lapStats[i] = new LapStats();
+            lateness[i] = new LatencyHistogram();
+        }
+    }
+
+    public int size() {
+        return nodes.length();
+    }
+
+    /**
+     * For reading the statistics of a node, commands must go through its lane.
+     */
+    public Node getNode(int index) {
+        return nodes.get(index);
+    }
+
+    /**
+     * How late samples started compared to their deadline at a target rate, in microseconds.
+     */
+    public LatencyHistogram getLateness(int index) {
+        return lateness[index];
+    }
+
+    /**
+     * Number of tasks that failed, including timeouts and corrupt responses.
+     */
+    public long getErrors(int index) {
+        return errors.get(index);
+    }
+
+    public void setErrorListener(ErrorListener listener) {
+        this.errorListener = listener;
+    }
+
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Records a sample if a recorder is set.
+     */
+    public void record(int index, int freq, LapStats stats) throws IOException {
+        SessionRecorder r = recorder;
+        if (r != null) {
+            r.record(index, freq, stats);
+        }
+    }
+
+    public void resetTime() {
+        timeOrigin = System.nanoTime();
+    }
+
+    /**
+     * Milliseconds since the time origin, shared by all nodes.
+     */
+    public int currentTime() {
+        return (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timeOrigin);
+    }
+
+    public Future<?> submit(int index, NodeTask task) {
+        return lanes[index].submit(wrap(index, task));
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(int index, NodeTask task, long delay, TimeUnit unit) {
+        ScheduledFuture<?> f = lanes[index].scheduleWithFixedDelay(wrap(index, task), 0L, Math.max(unit.toNanos(delay), 1L), TimeUnit.NANOSECONDS);
+        synchronized (tasks) {
+            tasks.add(f);
+        }
+        return f;
+    }
+
+    public ScheduledFuture<?> schedule(int index, NodeTask task, long delay, TimeUnit unit) {
+        return lanes[index].schedule(wrap(index, task), delay, unit);
+    }
+
+    /**
+     * Samples the lap stats of every node on its own lane.
+     * @param period between samples, zero to sample as fast as the link allows.
+     */
+    public SampleScheduler sampleAll(long period, TimeUnit unit, SampleListener listener) {
+        SampleScheduler scheduler = createSampler(period, unit, 0, listener);
+        scheduler.start();
+        return scheduler;
+    }
+
+    /**
+     * Creates a sampler to start once configured.
+     * @param maxBacklog samples the listener can hold before sampling stops, zero for no back-pressure.
+     * @see SampleScheduler
+     */
+    public SampleScheduler createSampler(long period, TimeUnit unit, int maxBacklog, SampleListener listener) {
+        return new SampleScheduler(this, period, unit, maxBacklog, listener);
+    }
+
+    /**
+     * Waits for every node to answer, in parallel.
+     */
+    public void awaitReady(long timeout, TimeUnit unit) throws IOException {
+        List<Future<?>> probes = new ArrayList<>(size());
+        for (int i=0; i<size(); i++) {
+            int index = i;
+            probes.add(lanes[i].submit(() -> nodes.get(index).awaitReady(timeout, unit)));
+        }
+        awaitAll(probes);
+    }
+
+    /**
+     * Closes the transport of a node whose device has gone, its tasks fail until it is reconnected.
+     */
+    public Future<?> disconnect(int index) {
+        return lanes[index].submit(() -> {
+            nodes.get(index).close();
+            return null;
+        });
+    }
+
+    /**
+     * Replaces a node with one on a new transport, once it answers, restoring its frequency.
+     * The old transport is closed.
+     */
+    public Future<?> reconnect(int index, Transport transport, long timeout, TimeUnit unit) {
+        return lanes[index].submit(() -> {
+            Node old = nodes.get(index);
+            try {
+                old.close();
+            } catch (IOException ignore) {
+                // most likely already gone
+            }
+            Node node = new Node(transport);
+            nodes.set(index, node);
+            int freq = node.awaitReady(timeout, unit);
+            int tunedFreq = old.getTunedFrequency();
+            if (tunedFreq != 0 && tunedFreq != freq) {
+                node.setFrequency(tunedFreq);
+            }
+            return null;
+        });
+    }
+
+    void register(SampleScheduler scheduler) {
+        synchronized (tasks) {
+            schedulers.add(scheduler);
+        }
+    }
+
+    void unregister(SampleScheduler scheduler) {
+        synchronized (tasks) {
+            schedulers.remove(scheduler);
+        }
+    }
+
+    /**
+     * Cancels all periodic tasks and pauses all samplers.
+     */
+    public void cancelAll() {
+        List<SampleScheduler> paused;
+        synchronized (tasks) {
+            for (Future<?> f : tasks) {
+                f.cancel(false);
+            }
+            tasks.clear();
+            paused = new ArrayList<>(schedulers);
+        }
+        for (SampleScheduler scheduler : paused) {
+            scheduler.pause();
+        }
+    }
+
+    private Runnable wrap(int index, NodeTask task) {
+        return () -> {
+            try {
+                // looked up on every run, in case the node has been reconnected
+                task.run(index, nodes.get(index));
+            } catch (Exception ex) {
+                errors.incrementAndGet(index);
+                // periodic tasks stop on exceptions, so report and carry on
+                ErrorListener l = errorListener;
+                if (l != null) {
+                    l.onError(index, ex);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        cancelAll();
+        List<Future<?>> closes = new ArrayList<>(size());
+        for (int i=0; i<size(); i++) {
+            int index = i;
+            closes.add(lanes[i].submit(() -> {
+                nodes.get(index).close();
+                return null;
+            }));
+            lanes[i].shutdown();
+        }
+        awaitAll(closes);
+    }
+
+    private static void awaitAll(List<Future<?>> futures) throws IOException {
+        IOException error = null;
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (Exception ex) {
+                if (error == null) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    error = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
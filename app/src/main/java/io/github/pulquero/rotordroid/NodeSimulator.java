@@ -0,0 +1,383 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates a RotorHazard node behind the serial protocol, with pilots passing the timer,
+ * so the acquisition code can run without hardware.
+ * Time comes from a {@link Clock}, which can be virtual to run faster than real time.
+ * Configure before first use, instances are not thread-safe.
+ */
+public final class NodeSimulator implements Transport {
+    public interface Clock {
+        long nanoTime();
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    };
+
+    /**
+     * Only moves when slept on or advanced, can be shared between simulators.
+     */
+    public static final class VirtualClock implements Clock {
+        private final AtomicLong now = new AtomicLong();
+
+        @Override
+        public long nanoTime() {
+            return now.get();
+        }
+
+        @Override
+        public void sleep(long nanos) {
+            advance(nanos);
+        }
+
+        public void advance(long nanos) {
+            now.addAndGet(nanos);
+        }
+    }
+
+    private static final int DEFAULT_FREQUENCY = 5800;
+    private static final int MAX_RSSI = 255;
+    private static final int MAX_MILLIS = 0xFFFF;
+    private static final int NOISE_FLOOR = 30;
+    private static final int FAR_RSSI = 60;
+    private static final int PEAK_RSSI = 110;
+    private static final double PASS_WIDTH_MS = 150.0;
+    private static final double CHANNEL_WIDTH_MHZ = 6.0;
+    private static final int ENTER_AT = 90;
+    private static final int EXIT_AT = 80;
+    private static final int LOOP_TIME_MICROS = 1000;
+    private static final int MAX_CATCH_UP_MS = 60000;
+    private static final int MAX_RESPONSES = 64;
+
+    private static final class Pilot {
+        final int freq;
+        final int lapMillis;
+        final int offsetMillis;
+
+        Pilot(int freq, int lapMillis, int offsetMillis) {
+            this.freq = freq;
+            this.lapMillis = lapMillis;
+            this.offsetMillis = offsetMillis;
+        }
+    }
+
+    private final Random random;
+    private final Clock clock;
+    private final long startNanos;
+    private final List<Pilot> pilots = new ArrayList<>();
+    private double noise = 1.5;
+    private int farRssi = FAR_RSSI;
+    private int peakRssi = PEAK_RSSI;
+    private long latencyNanos;
+    private long jitterNanos;
+    private double corruptProbability;
+    private double dropProbability;
+
+    private int frequency = DEFAULT_FREQUENCY;
+    private long lastStep = -1L;
+    private int rssi;
+    private int nodePeak;
+    private int nodeNadir = MAX_RSSI;
+    private boolean crossing;
+    private int laps;
+    private long lastLapTime;
+    private int passPeak;
+    private long passPeakTime;
+    private int lastPassPeak;
+    private int passNadir = MAX_RSSI;
+    private int lastPassNadir;
+    private int historyRssi;
+    private long historyStart;
+    private long historyEnd;
+
+    private final byte[] out = new byte[MAX_RESPONSES*(Node.LAP_STATS_SIZE+1)];
+    private int outLen;
+    private final int[] responseEnds = new int[MAX_RESPONSES];
+    private final long[] responseReady = new long[MAX_RESPONSES];
+    private int responses;
+    private final byte[] response = new byte[Node.LAP_STATS_SIZE+1];
+    private final LapStats stats = new LapStats();
+
+    public NodeSimulator(long seed) {
+        this(seed, SYSTEM_CLOCK);
+    }
+
+    public NodeSimulator(long seed, Clock clock) {
+        this.random = new Random(seed);
+        this.clock = clock;
+        this.startNanos = clock.nanoTime();
+    }
+
+    /**
+     * Adds a pilot on the given frequency, passing the timer every lap from the given offset.
+     */
+    public NodeSimulator addPilot(int freq, int lapMillis, int offsetMillis) {
+        pilots.add(new Pilot(freq, lapMillis, offsetMillis));
+        return this;
+    }
+
+    public NodeSimulator setNoise(double sigma) {
+        this.noise = sigma;
+        return this;
+    }
+
+    /**
+     * Sets the RSSI of a pilot on the tuned frequency, while far away and while passing the timer, up to 255.
+     */
+    public NodeSimulator setSignal(int farRssi, int peakRssi) {
+        this.farRssi = farRssi;
+        this.peakRssi = peakRssi;
+        return this;
+    }
+
+    /**
+     * Delays every response by the latency plus up to the jitter.
+     */
+    public NodeSimulator setLatency(long latency, long jitter, TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+        this.jitterNanos = unit.toNanos(jitter);
+        return this;
+    }
+
+    /**
+     * Flips a bit in, or loses, a fraction of the responses.
+     */
+    public NodeSimulator setCorruption(double corruptProbability, double dropProbability) {
+        this.corruptProbability = corruptProbability;
+        this.dropProbability = dropProbability;
+        return this;
+    }
+
+    public NodeSimulator setFrequency(int freq) {
+        this.frequency = freq;
+        return this;
+    }
+
+    public int getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Laps detected so far, as reported by lap stats.
+     */
+    public int getLaps() {
+        return laps;
+    }
+
+    /**
+     * Simulates the pilots flying on all the given frequencies, staggered around a lap.
+     */
+    public static List<NodeSimulator> createAll(int count, int[] pilotFreqs, int lapMillis, long seed) {
+        List<NodeSimulator> simulators = new ArrayList<>();
+        for (int i=0; i<count; i++) {
+            NodeSimulator sim = new NodeSimulator(seed + i);
+            for (int p=0; p<pilotFreqs.length; p++) {
+                sim.addPilot(pilotFreqs[p], lapMillis, p*lapMillis/pilotFreqs.length);
+            }
+            if (i < pilotFreqs.length) {
+                sim.setFrequency(pilotFreqs[i]);
+            }
+            simulators.add(sim);
+        }
+        return simulators;
+    }
+
+    @Override
+    public void write(byte[] buf, int len, int timeout) throws IOException {
+        long now = now();
+        advanceTo(TimeUnit.NANOSECONDS.toMillis(now - startNanos));
+        for (int i=0; i<len; i++) {
+            byte cmd = buf[i];
+            if (cmd == Node.READ_LAP_STATS) {
+                lapStats(now);
+                Node.encodeLapStats(stats, response, 0);
+                respond(now, Node.LAP_STATS_SIZE+1);
+            } else if (cmd == Node.READ_FREQUENCY) {
+                Node.write16(response, 0, frequency);
+                response[2] = Node.calculateChecksum(response, 0, 2);
+                respond(now, 3);
+            } else if (cmd == Node.WRITE_FREQUENCY && i+3 < len) {
+                if (Node.calculateChecksum(buf, i+1, 2) == buf[i+3]) {
+                    frequency = Node.read16(buf, i+1);
+                }
+                i += 3;
+            }
+        }
+    }
+
+    private void respond(long now, int len) throws IOException {
+        if (random.nextDouble() < dropProbability) {
+            return;
+        }
+        if (responses == MAX_RESPONSES) {
+            throw new IOException("Too many outstanding commands");
+        }
+        if (random.nextDouble() < corruptProbability) {
+            response[random.nextInt(len)] ^= 1 << random.nextInt(8);
+        }
+        System.arraycopy(response, 0, out, outLen, len);
+        outLen += len;
+        long ready = now + latencyNanos + (jitterNanos > 0 ? (long) (random.nextDouble()*jitterNanos) : 0L);
+        if (responses > 0) {
+            // a serial link can't reorder
+            ready = Math.max(ready, responseReady[responses-1]);
+        }
+        responseEnds[responses] = outLen;
+        responseReady[responses] = ready;
+        responses++;
+    }
+
+    @Override
+    public int read(byte[] buf, int timeout) throws IOException {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        long wait = responses > 0 ? responseReady[0] - now() : Long.MAX_VALUE;
+        if (wait > timeoutNanos) {
+            sleep(timeoutNanos);
+            return 0;
+        } else if (wait > 0) {
+            sleep(wait);
+        }
+        long now = now();
+        int ready = 0;
+        while (ready < responses && responseReady[ready] <= now) {
+            ready++;
+        }
+        int len = Math.min(responseEnds[ready-1], buf.length);
+        System.arraycopy(out, 0, buf, 0, len);
+        System.arraycopy(out, len, out, 0, outLen - len);
+        outLen -= len;
+        int consumed = 0;
+        for (int i=0; i<responses; i++) {
+            responseEnds[i] -= len;
+            if (responseEnds[i] <= 0) {
+                consumed++;
+            }
+        }
+        System.arraycopy(responseEnds, consumed, responseEnds, 0, responses - consumed);
+        System.arraycopy(responseReady, consumed, responseReady, 0, responses - consumed);
+        responses -= consumed;
+        return len;
+    }
+
+    private long now() {
+        return clock.nanoTime();
+    }
+
+    private void sleep(long nanos) throws IOException {
+        try {
+            clock.sleep(nanos);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Runs the node loop, one iteration per millisecond, up to the given time.
+     */
+    private void advanceTo(long t) {
+        if (lastStep < 0L) {
+            lastStep = t - 1L;
+            historyRssi = -1;
+        }
+        lastStep = Math.max(lastStep, t - MAX_CATCH_UP_MS);
+        while (lastStep < t) {
+            lastStep++;
+            step(lastStep);
+        }
+    }
+
+    private void step(long t) {
+        rssi = sample(t);
+        nodePeak = Math.max(nodePeak, rssi);
+        nodeNadir = Math.min(nodeNadir, rssi);
+        if (crossing) {
+            if (rssi > passPeak) {
+                passPeak = rssi;
+                passPeakTime = t;
+            }
+            if (rssi < EXIT_AT) {
+                crossing = false;
+                laps++;
+                lastLapTime = passPeakTime;
+                lastPassPeak = passPeak;
+                lastPassNadir = passNadir;
+                passNadir = MAX_RSSI;
+            }
+        } else {
+            passNadir = Math.min(passNadir, rssi);
+            if (rssi >= ENTER_AT) {
+                crossing = true;
+                passPeak = rssi;
+                passPeakTime = t;
+            }
+        }
+        if (rssi > historyRssi) {
+            historyRssi = rssi;
+            historyStart = t;
+            historyEnd = t;
+        } else if (rssi == historyRssi) {
+            historyEnd = t;
+        }
+    }
+
+    private int sample(long t) {
+        double level = NOISE_FLOOR;
+        for (int i=0; i<pilots.size(); i++) {
+            Pilot pilot = pilots.get(i);
+            long phase = (t - pilot.offsetMillis) % pilot.lapMillis;
+            if (phase < 0) {
+                phase += pilot.lapMillis;
+            }
+            double dt = Math.min(phase, pilot.lapMillis - phase)/PASS_WIDTH_MS;
+            double df = (frequency - pilot.freq)/CHANNEL_WIDTH_MHZ;
+            double proximity = Math.exp(-0.5*dt*dt);
+            double gain = Math.exp(-0.5*df*df);
+            level = Math.max(level, NOISE_FLOOR + gain*(farRssi - NOISE_FLOOR + (peakRssi - farRssi)*proximity));
+        }
+        long value = Math.round(level + noise*random.nextGaussian());
+        return (int) Math.max(0L, Math.min(MAX_RSSI, value));
+    }
+
+    /**
+     * Reports the stats at the given time, then starts a new history period as the real node does on a read.
+     */
+    private void lapStats(long now) {
+        long t = TimeUnit.NANOSECONDS.toMillis(now - startNanos);
+        stats.laps = laps;
+        stats.msSinceLastLap = (int) Math.min(MAX_MILLIS, t - lastLapTime);
+        stats.rssi = rssi;
+        stats.peakRssi = nodePeak;
+        stats.lastPassPeak = lastPassPeak;
+        stats.loopTimeMicros = LOOP_TIME_MICROS + random.nextInt(50);
+        stats.flags = crossing ? 1 : 0;
+        stats.lastPassNadir = lastPassNadir;
+        stats.nadirRssi = nodeNadir;
+        stats.historyRssi = historyRssi;
+        stats.msSinceHistoryStart = (int) Math.min(MAX_MILLIS, t - historyStart);
+        stats.msSinceHistoryEnd = (int) Math.min(MAX_MILLIS, t - historyEnd);
+        historyRssi = rssi;
+        historyStart = t;
+        historyEnd = t;
+    }
+
+    @Override
+    public void close() {
+    }
+}
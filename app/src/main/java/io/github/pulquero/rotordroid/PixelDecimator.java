@@ -0,0 +1,199 @@
+package io.github.pulquero.rotordroid;
+
+/**
+ * Reduces a {@link WindowedXYSeries} to at most four points per pixel column, the first, min, max and last,
+ * which draw the same lines as all the points in the column.
+ * Columns are aligned to multiples of their width in x, so while the scale stays the same
+ * a scrolling window only drops the columns that left it and folds in the points that arrived since the last call.
+ * Everything is recomputed only when the scale changes, the window jumps or moves back, or the series is reset.
+ * Not thread safe, meant to be owned by the renderer.
+ */
+final class PixelDecimator {
+    /** Point budget when reading the series, beyond which it falls back to its own coarser representation. */
+    static final int MAX_FETCH = 8192;
+
+    private final SeriesSnapshot fetched = new SeriesSnapshot();
+    private final SeriesSnapshot decimated = new SeriesSnapshot();
+    /** The columns changed since they were last written out. */
+    private boolean dirty;
+    private WindowedXYSeries series;
+    private int generation;
+    private int columns;
+    private double columnWidth;
+    private int capacity;
+    private int[] count = new int[0];
+    private int[] firstX;
+    private int[] firstY;
+    private int[] lastX;
+    private int[] lastY;
+    private int[] minX;
+    private int[] minY;
+    private int[] maxX;
+    private int[] maxY;
+    /** Column index of the first slot, slots are a ring. */
+    private long firstColumn;
+    private int head;
+    private int size;
+    /** All points up to this x have been folded in. */
+    private int foldedX;
+    /** The last point before the first column, so lines reach the left edge. */
+    private boolean hasBefore;
+    private int beforeX;
+    private int beforeY;
+
+    /**
+     * Decimates the points of the series within [windowMinX, windowMaxX] across the given number of pixel columns.
+     * @return owned by the decimator, valid until the next call.
+     */
+    SeriesSnapshot decimate(WindowedXYSeries series, double windowMinX, double windowMaxX, int columns) {
+        int gen = series.generation();
+        double width = (windowMaxX - windowMinX)/columns;
+        long from = column(windowMinX, width);
+        long to = column(windowMaxX, width);
+        if (series != this.series || gen != generation || columns != this.columns || width != columnWidth
+                || size == 0 || from < firstColumn || from >= firstColumn + size) {
+            reset(series, gen, columns, width, from);
+        } else {
+            dropBefore(from);
+        }
+        extend(to, (int) Math.floor(windowMaxX));
+        if (dirty) {
+            write(decimated);
+            dirty = false;
+        }
+        return decimated;
+    }
+
+    private static long column(double x, double width) {
+        return (long) Math.floor(x/width);
+    }
+
+    private void reset(WindowedXYSeries newSeries, int gen, int newColumns, double width, long from) {
+        series = newSeries;
+        generation = gen;
+        if (newColumns != columns) {
+            columns = newColumns;
+            // the window can straddle one more column than it is wide
+            capacity = newColumns + 2;
+            count = new int[capacity];
+            firstX = new int[capacity];
+            firstY = new int[capacity];
+            lastX = new int[capacity];
+            lastY = new int[capacity];
+            minX = new int[capacity];
+            minY = new int[capacity];
+            maxX = new int[capacity];
+            maxY = new int[capacity];
+        }
+        columnWidth = width;
+        firstColumn = from;
+        head = 0;
+        size = 1;
+        count[0] = 0;
+        // whole columns, even if the window starts part way through the first one
+        foldedX = (int) Math.ceil(from*width) - 1;
+        hasBefore = false;
+        dirty = true;
+    }
+
+    private void dropBefore(long from) {
+        while (firstColumn < from) {
+            if (count[head] > 0) {
+                hasBefore = true;
+                beforeX = lastX[head];
+                beforeY = lastY[head];
+            }
+            head = (head + 1) % capacity;
+            firstColumn++;
+            size--;
+            dirty = true;
+        }
+    }
+
+    private void extend(long to, int toX) {
+        while (firstColumn + size <= to) {
+            count[(head + size) % capacity] = 0;
+            size++;
+        }
+        if (foldedX >= toX) {
+            return;
+        }
+        int fromX = foldedX + 1;
+        series.snapshot(fetched, fromX, toX, MAX_FETCH);
+        for (int i=0; i<fetched.size; i++) {
+            int x = fetched.xs[i];
+            int y = fetched.ys[i];
+            long c = column(x, columnWidth);
+            if (c < firstColumn) {
+                // the neighbour the series includes before the range
+                if (!hasBefore || x >= beforeX) {
+                    hasBefore = true;
+                    beforeX = x;
+                    beforeY = y;
+                }
+            } else if (x >= fromX && x <= toX) {
+                // coarser representations can have several points at the same x
+                fold(c, x, y);
+                foldedX = Math.max(foldedX, x);
+            }
+        }
+    }
+
+    private void fold(long c, int x, int y) {
+        dirty = true;
+        int slot = (int) ((head + c - firstColumn) % capacity);
+        if (count[slot]++ == 0) {
+            firstX[slot] = x;
+            firstY[slot] = y;
+            minX[slot] = x;
+            minY[slot] = y;
+            maxX[slot] = x;
+            maxY[slot] = y;
+        } else if (y < minY[slot]) {
+            minX[slot] = x;
+            minY[slot] = y;
+        } else if (y > maxY[slot]) {
+            maxX[slot] = x;
+            maxY[slot] = y;
+        }
+        lastX[slot] = x;
+        lastY[slot] = y;
+    }
+
+    private void write(SeriesSnapshot into) {
+        into.ensureCapacity(4*size + 1);
+        int n = 0;
+        if (hasBefore) {
+            into.xs[n] = beforeX;
+            into.ys[n++] = beforeY;
+        }
+        int slot = head;
+        for (int i=0; i<size; i++, slot++) {
+            if (slot == capacity) {
+                slot = 0;
+            }
+            if (count[slot] == 0) {
+                continue;
+            }
+            into.xs[n] = firstX[slot];
+            into.ys[n++] = firstY[slot];
+            boolean minFirst = minX[slot] <= maxX[slot];
+            n = append(into, n, minFirst ? minX[slot] : maxX[slot], minFirst ? minY[slot] : maxY[slot]);
+            n = append(into, n, minFirst ? maxX[slot] : minX[slot], minFirst ? maxY[slot] : minY[slot]);
+            n = append(into, n, lastX[slot], lastY[slot]);
+        }
+        into.size = n;
+    }
+
+    /**
+     * Appends the point unless it is the one just written.
+     */
+    private static int append(SeriesSnapshot into, int n, int x, int y) {
+        if (into.xs[n-1] == x && into.ys[n-1] == y) {
+            return n;
+        }
+        into.xs[n] = x;
+        into.ys[n] = y;
+        return n + 1;
+    }
+}
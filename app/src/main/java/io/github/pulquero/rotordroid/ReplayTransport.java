@@ -0,0 +1,105 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands in for a node by answering commands from a recorded session,
+ * so a recording goes through the same acquisition pipeline as a live node.
+ * Lap stats are those of the latest recorded sample at the replay clock.
+ */
+public final class ReplayTransport implements Transport {
+    private final SessionReader.Cursor cursor;
+    private final int node;
+    private final double speed;
+    private final int startTime;
+    private final LapStats next = new LapStats();
+    private final LapStats current = new LapStats();
+    private final byte[] pending = new byte[256];
+    private int pendingLen;
+    private final long startNanos;
+    private boolean hasNext;
+    private int nextFrequency;
+    private int frequency;
+
+    public ReplayTransport(SessionReader reader, int node, double speed) {
+        this.cursor = reader.seek(reader.startTime());
+        this.node = node;
+        this.speed = speed;
+        this.startTime = reader.startTime();
+        this.startNanos = System.nanoTime();
+        advance();
+    }
+
+    public static List<ReplayTransport> openAll(SessionReader reader, double speed) {
+        List<ReplayTransport> transports = new ArrayList<>();
+        for (int i=0; i<reader.nodeCount(); i++) {
+            transports.add(new ReplayTransport(reader, i, speed));
+        }
+        return transports;
+    }
+
+    private void advance() {
+        hasNext = false;
+        int n;
+        while ((n = cursor.next(next)) >= 0) {
+            if (n == node) {
+                hasNext = true;
+                nextFrequency = cursor.frequency();
+                return;
+            }
+        }
+    }
+
+    private void catchUp() {
+        int replayTime = startTime + (int) (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)*speed);
+        while (hasNext && next.t <= replayTime) {
+            SessionReader.copy(next, current);
+            frequency = nextFrequency;
+            advance();
+        }
+    }
+
+    @Override
+    public void write(byte[] buf, int len, int timeout) throws IOException {
+        for (int i=0; i<len; i++) {
+            byte cmd = buf[i];
+            if (cmd == Node.READ_LAP_STATS) {
+                catchUp();
+                ensureSpace(Node.LAP_STATS_SIZE+1);
+                Node.encodeLapStats(current, pending, pendingLen);
+                pendingLen += Node.LAP_STATS_SIZE+1;
+            } else if (cmd == Node.READ_FREQUENCY) {
+                catchUp();
+                ensureSpace(3);
+                Node.write16(pending, pendingLen, frequency);
+                pending[pendingLen+2] = Node.calculateChecksum(pending, pendingLen, 2);
+                pendingLen += 3;
+            } else if (cmd == Node.WRITE_FREQUENCY) {
+                // a recording can't be retuned
+                i += 3;
+            }
+        }
+    }
+
+    private void ensureSpace(int len) throws IOException {
+        if (pendingLen + len > pending.length) {
+            throw new IOException("Too many outstanding commands");
+        }
+    }
+
+    @Override
+    public int read(byte[] buf, int timeout) {
+        int len = Math.min(pendingLen, buf.length);
+        System.arraycopy(pending, 0, buf, 0, len);
+        System.arraycopy(pending, len, pending, 0, pendingLen - len);
+        pendingLen -= len;
+        return len;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.pulquero.rotordroid;
+
+/**
+ * Reassembles node responses from the serial byte stream.
+ * A response may arrive split over several reads, or several responses may arrive in one read.
+ * Responses carry no header, so after a checksum failure the framer slides forward a byte at a time
+ * until a frame validates again, giving up on the expected frame once a whole frame's worth of bytes has been skipped.
+ * Not thread-safe.
+ */
+final class ResponseFramer {
+    static final int INCOMPLETE = 0;
+    static final int FRAME = 1;
+    static final int DROPPED = 2;
+
+    private final byte[] ring;
+    private final int mask;
+    private final byte[] frame;
+    private int start;
+    private int size;
+    private int skipRun;
+
+    private long frames;
+    private long droppedFrames;
+    private long resyncs;
+    private long skippedBytes;
+
+    ResponseFramer(int capacity, int maxFrameSize) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.ring = new byte[capacity];
+        this.mask = capacity - 1;
+        this.frame = new byte[maxFrameSize];
+    }
+
+    void append(byte[] buf, int len) {
+        int overflow = size + len - ring.length;
+        if (overflow > 0) {
+            // oldest bytes are the least likely to still be wanted
+            skip(overflow);
+        }
+        int end = (start + size) & mask;
+        int firstLen = Math.min(len, ring.length - end);
+        System.arraycopy(buf, 0, ring, end, firstLen);
+        System.arraycopy(buf, firstLen, ring, 0, len - firstLen);
+        size += len;
+    }
+
+    int available() {
+        return size;
+    }
+
+    /**
+     * Tries to extract the next frame of the given size (payload plus checksum).
+     * @return {@link #FRAME} if a valid frame is available from {@link #frame()},
+     * {@link #DROPPED} if the expected frame could not be recovered,
+     * or {@link #INCOMPLETE} if more bytes are needed.
+     */
+    int poll(int frameSize) {
+        while (size >= frameSize) {
+            copyFrame(frameSize);
+            int payloadSize = frameSize - 1;
+            if (frame[payloadSize] == Node.calculateChecksum(frame, 0, payloadSize)) {
+                consume(frameSize);
+                frames++;
+                if (skipRun > 0) {
+                    resyncs++;
+                    skipRun = 0;
+                }
+                return FRAME;
+            }
+            skip(1);
+            skipRun++;
+            if (skipRun >= frameSize) {
+                skipRun = 0;
+                droppedFrames++;
+                return DROPPED;
+            }
+        }
+        return INCOMPLETE;
+    }
+
+    /**
+     * Gives up on an expected frame that never (fully) arrived.
+     */
+    void drop() {
+        droppedFrames++;
+        skipRun = 0;
+    }
+
+    byte[] frame() {
+        return frame;
+    }
+
+    void skip(int len) {
+        start = (start + len) & mask;
+        size -= len;
+        skippedBytes += len;
+    }
+
+    private void consume(int len) {
+        start = (start + len) & mask;
+        size -= len;
+    }
+
+    private void copyFrame(int len) {
+        int firstLen = Math.min(len, ring.length - start);
+        System.arraycopy(ring, start, frame, 0, firstLen);
+        System.arraycopy(ring, 0, frame, firstLen, len - firstLen);
+    }
+
+    void clear() {
+        start = 0;
+        size = 0;
+        skipRun = 0;
+    }
+
+    long frames() {
+        return frames;
+    }
+
+    long droppedFrames() {
+        return droppedFrames;
+    }
+
+    long resyncs() {
+        return resyncs;
+    }
+
+    long skippedBytes() {
+        return skippedBytes;
+    }
+}
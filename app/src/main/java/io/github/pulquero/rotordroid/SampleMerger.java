@@ -0,0 +1,213 @@
+package io.github.pulquero.rotordroid;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Merges the samples of several nodes into one stream in time order, with a k-way merge over bounded per-node queues.
+ * A sample is passed on once every node has reached its time,
+ * or once it is more than the maximum skew behind the latest node, so a stalled node doesn't hold the others back.
+ * Samples of a node stalled for longer are passed on late, still in order for that node.
+ * Each queue is written by the lane of its node, and the merge is run by whichever thread calls {@link #drain(Sink)} first,
+ * the others return straight away rather than wait, leaving what they offered to the next drain.
+ * A full queue drops new samples.
+ */
+final class SampleMerger {
+    interface Sink {
+        void onSample(int node, int time, int rssi);
+
+        /**
+         * Every sample up to the time has been passed on, apart from late ones.
+         */
+        void onWatermark(int time);
+    }
+
+    private final Queue[] queues;
+    private final int maxSkew;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    // only used by the draining thread
+    private final int[] heap;
+    private boolean hasWatermark;
+    private int watermark;
+
+    /**
+     * @param capacity per node, a power of two.
+     * @param maxSkew in the units of the sample times.
+     */
+    SampleMerger(int nodeCount, int capacity, int maxSkew) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.queues = new Queue[nodeCount];
+        for (int i=0; i<nodeCount; i++) {
+            queues[i] = new Queue(capacity);
+        }
+        this.maxSkew = maxSkew;
+        this.heap = new int[nodeCount];
+    }
+
+    /**
+     * Called from the lane of the node, with increasing times.
+     * @return false if the queue was full.
+     */
+    boolean offer(int node, int time, int rssi) {
+        return queues[node].offer(time, rssi);
+    }
+
+    /**
+     * Passes on the samples that are due, unless another thread is already doing so.
+     */
+    void drain(Sink sink) {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            merge(sink);
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    long getDropped(int node) {
+        return queues[node].dropped;
+    }
+
+    private void merge(Sink sink) {
+        boolean any = false;
+        int slowest = Integer.MAX_VALUE;
+        int latest = Integer.MIN_VALUE;
+        for (Queue q : queues) {
+            if (q.reported) {
+                int t = q.lastTime;
+                any = true;
+                slowest = Math.min(slowest, t);
+                latest = Math.max(latest, t);
+            } else {
+                // might yet report anything
+                slowest = Integer.MIN_VALUE;
+            }
+        }
+        if (!any) {
+            return;
+        }
+        int due = Math.max(slowest, latest - maxSkew);
+
+        int n = 0;
+        for (int i=0; i<queues.length; i++) {
+            if (queues[i].size() > 0) {
+                heap[n++] = i;
+                siftUp(n-1);
+            }
+        }
+        while (n > 0) {
+            int node = heap[0];
+            Queue q = queues[node];
+            int t = q.peekTime();
+            if (t > due) {
+                break;
+            }
+            sink.onSample(node, t, q.peekRssi());
+            q.poll();
+            if (q.size() == 0) {
+                heap[0] = heap[--n];
+            }
+            siftDown(0, n);
+        }
+        if (!hasWatermark || due > watermark) {
+            hasWatermark = true;
+            watermark = due;
+            sink.onWatermark(due);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1)/2;
+            if (headTime(heap[parent]) <= headTime(heap[i])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int n) {
+        while (true) {
+            int smallest = i;
+            int left = 2*i + 1;
+            int right = left + 1;
+            if (left < n && headTime(heap[left]) < headTime(heap[smallest])) {
+                smallest = left;
+            }
+            if (right < n && headTime(heap[right]) < headTime(heap[smallest])) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private int headTime(int node) {
+        return queues[node].peekTime();
+    }
+
+    private void swap(int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    /**
+     * Single producer, single consumer ring.
+     */
+    private static final class Queue {
+        final int mask;
+        final int[] times;
+        final int[] rssis;
+        volatile int head;
+        volatile int tail;
+        volatile boolean reported;
+        volatile int lastTime;
+        volatile long dropped;
+
+        Queue(int capacity) {
+            this.mask = capacity - 1;
+            this.times = new int[capacity];
+            this.rssis = new int[capacity];
+        }
+
+        boolean offer(int time, int rssi) {
+            int t = tail;
+            boolean offered = t - head <= mask;
+            if (offered) {
+                times[t & mask] = time;
+                rssis[t & mask] = rssi;
+                tail = t + 1;
+            } else {
+                dropped++;
+            }
+            // after the sample, so the merge never sees a time without its sample
+            lastTime = time;
+            reported = true;
+            return offered;
+        }
+
+        int size() {
+            return tail - head;
+        }
+
+        int peekTime() {
+            return times[head & mask];
+        }
+
+        int peekRssi() {
+            return rssis[head & mask];
+        }
+
+        void poll() {
+            head = head + 1;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Samples the lap stats of every node on its own lane, either at a target rate or as fast as the link allows.
+ * At a target rate, samples are due at fixed deadlines, so the round trip doesn't add to the period,
+ * and missed deadlines are skipped rather than caught up in a burst.
+ * With back-pressure, each delivered sample holds a credit until {@link #release()} is called,
+ * and nodes stop sampling when the consumer lags, lowest priority first.
+ */
+public final class SampleScheduler {
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+
+    private static final long BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    private final NodeManager nodes;
+    private final long periodNanos;
+    private final int maxBacklog;
+    private final NodeManager.SampleListener listener;
+    private final Lane[] lanes;
+    private final AtomicInteger backlog = new AtomicInteger();
+    private volatile boolean running;
+    /** Changes on every start, so a sample in flight from before a pause doesn't carry on. */
+    private volatile int epoch;
+
+    /**
+     * @param period zero to sample as fast as the link allows.
+     * @param maxBacklog samples the consumer can hold before sampling stops, zero for no back-pressure.
+     */
+    SampleScheduler(NodeManager nodes, long period, TimeUnit unit, int maxBacklog, NodeManager.SampleListener listener) {
+        this.nodes = nodes;
+        this.periodNanos = unit.toNanos(period);
+        this.maxBacklog = maxBacklog;
+        this.listener = listener;
+        this.lanes = new Lane[nodes.size()];
+        for (int i=0; i<lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    public void setPriority(int index, int priority) {
+        lanes[index].priority = priority;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        epoch++;
+        nodes.register(this);
+        for (int i=0; i<lanes.length; i++) {
+            lanes[i].future = nodes.schedule(i, lanes[i], 0L, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * No samples are delivered once paused, apart from one already being delivered.
+     */
+    public synchronized void pause() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        nodes.unregister(this);
+        for (Lane lane : lanes) {
+            if (lane.future != null) {
+                lane.future.cancel(false);
+                lane.future = null;
+            }
+        }
+        backlog.set(0);
+    }
+
+    public void resume() {
+        start();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the credit of a delivered sample, when the consumer is done with it.
+     */
+    public void release() {
+        if (maxBacklog > 0 && backlog.decrementAndGet() < 0) {
+            backlog.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the credits of several delivered samples at once.
+     */
+    public void release(int count) {
+        if (maxBacklog <= 0 || count <= 0) {
+            return;
+        }
+        int b;
+        do {
+            b = backlog.get();
+        } while (!backlog.compareAndSet(b, Math.max(0, b - count)));
+    }
+
+    /**
+     * Samples per second delivered over the last second.
+     */
+    public double getRate(int index) {
+        return lanes[index].rate;
+    }
+
+    /**
+     * Samples not taken because the consumer lagged.
+     */
+    public long getThrottled(int index) {
+        return lanes[index].throttled;
+    }
+
+    /**
+     * Deadlines missed because the round trip took longer than the period.
+     */
+    public long getSkipped(int index) {
+        return lanes[index].skipped;
+    }
+
+    private int backlogLimit(int priority) {
+        switch (priority) {
+            case PRIORITY_HIGH:
+                return maxBacklog;
+            case PRIORITY_NORMAL:
+                return maxBacklog*3/4;
+            default:
+                return maxBacklog/2;
+        }
+    }
+
+    private final class Lane implements NodeManager.NodeTask {
+        final LapStats stats = new LapStats();
+        volatile int priority = PRIORITY_NORMAL;
+        volatile double rate;
+        volatile long throttled;
+        volatile long skipped;
+        int laneEpoch;
+        long deadline;
+        long rateWindowStart;
+        int rateWindowCount;
+        ScheduledFuture<?> future;
+
+        @Override
+        public void run(int index, Node node) throws IOException {
+            if (!running) {
+                return;
+            }
+            int runEpoch = epoch;
+            long start = System.nanoTime();
+            if (laneEpoch != runEpoch) {
+                // first sample since started
+                laneEpoch = runEpoch;
+                deadline = start;
+                rateWindowStart = start;
+                rateWindowCount = 0;
+            }
+            boolean backedOff = maxBacklog > 0 && backlog.get() >= Math.max(1, backlogLimit(priority));
+            try {
+                if (periodNanos > 0L) {
+                    nodes.getLateness(index).record(TimeUnit.NANOSECONDS.toMicros(start - deadline));
+                }
+                if (backedOff) {
+                    throttled++;
+                } else {
+                    sample(index, node, start);
+                }
+            } finally {
+                scheduleNext(index, backedOff, runEpoch);
+            }
+        }
+
+        private void sample(int index, Node node, long start) throws IOException {
+            node.readLapStats(nodes.currentTime(), stats);
+            nodes.record(index, node.getTunedFrequency(), stats);
+            rateWindowCount++;
+            if (start - rateWindowStart >= RATE_WINDOW_NANOS) {
+                rate = rateWindowCount*1e9/(start - rateWindowStart);
+                rateWindowStart = start;
+                rateWindowCount = 0;
+            }
+            if (maxBacklog > 0) {
+                backlog.incrementAndGet();
+            }
+            if (running) {
+                listener.onSample(index, stats);
+            } else {
+                release();
+            }
+        }
+
+        private void scheduleNext(int index, boolean backedOff, int runEpoch) {
+            long delay;
+            long now = System.nanoTime();
+            if (periodNanos > 0L) {
+                deadline += periodNanos;
+                if (deadline < now) {
+                    long missed = (now - deadline)/periodNanos + 1;
+                    skipped += missed;
+                    deadline += missed*periodNanos;
+                }
+                delay = deadline - now;
+            } else {
+                delay = backedOff ? BACKOFF_NANOS : 0L;
+            }
+            synchronized (SampleScheduler.this) {
+                if (running && runEpoch == epoch) {
+                    future = nodes.schedule(index, this, delay, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.pulquero.rotordroid;
+
+/**
+ * Sequence lock: writers never wait for readers, readers retry if a write overlapped their read.
+ * Writers must be serialized externally.
+ * The extra volatile accesses stand in for the fences the Java memory model otherwise lacks:
+ * plain writes can't move before the odd sequence, and a reader's copy can't move after its re-check.
+ */
+final class SeqLock {
+    private volatile int seq;
+    private volatile int writeFence;
+
+    void beginWrite() {
+        seq++;
+        writeFence = seq;
+    }
+
+    void endWrite() {
+        seq++;
+    }
+
+    /**
+     * @return the sequence to validate the read against.
+     */
+    int beginRead() {
+        int s = seq;
+        while ((s & 1) != 0) {
+            Thread.yield();
+            s = seq;
+        }
+        return s;
+    }
+
+    boolean validate(int s, SeriesSnapshot reader) {
+        reader.fence = s;
+        return seq == s;
+    }
+}
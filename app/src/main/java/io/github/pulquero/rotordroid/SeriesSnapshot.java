@@ -0,0 +1,31 @@
+package io.github.pulquero.rotordroid;
+
+/**
+ * Consistent copy of an {@link IntXYSeries}, owned by a reader and reused between frames.
+ */
+public final class SeriesSnapshot {
+    int[] xs = new int[0];
+    int[] ys = new int[0];
+    int size;
+    // written by the reader to order its copy before re-checking the writer's sequence
+    volatile int fence;
+
+    void ensureCapacity(int capacity) {
+        if (xs.length < capacity) {
+            xs = new int[capacity];
+            ys = new int[capacity];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int x(int index) {
+        return xs[index];
+    }
+
+    public int y(int index) {
+        return ys[index];
+    }
+}
@@ -0,0 +1,230 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file written by {@link SessionRecorder}.
+ * Opening only maps the files, seeking is a binary search over the keyframe index.
+ */
+public final class SessionReader implements Closeable {
+    private final RandomAccessFile dataFile;
+    private final RandomAccessFile indexFile;
+    private final ByteBuffer data;
+    private final ByteBuffer index;
+    private final int indexSize;
+    private final int nodeCount;
+    private final long startEpochMillis;
+
+    public SessionReader(File file) throws IOException {
+        dataFile = new RandomAccessFile(file, "r");
+        indexFile = new RandomAccessFile(new File(file.getPath() + SessionRecorder.INDEX_SUFFIX), "r");
+        FileChannel dataChannel = dataFile.getChannel();
+        ByteBuffer header = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0L, SessionRecorder.HEADER_SIZE);
+        if (header.getInt(0) != SessionRecorder.MAGIC) {
+            close();
+            throw new IOException("Not a session file");
+        }
+        short version = header.getShort(SessionRecorder.VERSION_POS);
+        if (version != SessionRecorder.VERSION) {
+            close();
+            throw new IOException("Unsupported session version " + version);
+        }
+        nodeCount = header.getShort(SessionRecorder.NODE_COUNT_POS);
+        startEpochMillis = header.getLong(8);
+        long length = Math.min(header.getLong(SessionRecorder.LENGTH_POS), dataChannel.size());
+        data = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0L, length);
+        FileChannel indexChannel = indexFile.getChannel();
+        long indexLength = indexChannel.size() - indexChannel.size() % SessionRecorder.INDEX_ENTRY_SIZE;
+        index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0L, indexLength);
+        // drop index entries beyond the committed data (unclosed recording)
+        int n = (int) (indexLength / SessionRecorder.INDEX_ENTRY_SIZE);
+        while (n > 0 && indexOffset(n-1) > length) {
+            n--;
+        }
+        indexSize = n;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public long startEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /**
+     * @return time of the first sample, or 0 if empty.
+     */
+    public int startTime() {
+        return indexSize > 0 ? indexTime(0) : 0;
+    }
+
+    private int indexTime(int i) {
+        return index.getInt(i*SessionRecorder.INDEX_ENTRY_SIZE);
+    }
+
+    private long indexOffset(int i) {
+        return index.getLong(i*SessionRecorder.INDEX_ENTRY_SIZE + 4);
+    }
+
+    /**
+     * @return a cursor positioned at the first sample at or after the given time.
+     */
+    public Cursor seek(int time) {
+        int lo = 0;
+        int hi = indexSize - 1;
+        int keyframe = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (indexTime(mid) <= time) {
+                keyframe = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        Cursor cursor = new Cursor(keyframe);
+        cursor.skipTo(time);
+        return cursor;
+    }
+
+    public final class Cursor {
+        private final LapStats peeked = new LapStats();
+        private final int[][] prev = new int[SessionRecorder.MAX_NODES][SessionRecorder.FIELDS];
+        private int prevTime;
+        private int nextKeyframe;
+        private int pos;
+        private int node = -1;
+        private int frequency;
+        private boolean hasPeeked;
+        private int peekedNode;
+        private int peekedFrequency;
+
+        private Cursor(int keyframe) {
+            nextKeyframe = keyframe;
+            pos = indexSize > 0 ? (int) indexOffset(keyframe) : data.limit();
+        }
+
+        private void skipTo(int time) {
+            while (read(peeked)) {
+                if (peeked.t >= time) {
+                    hasPeeked = true;
+                    peekedNode = node;
+                    peekedFrequency = frequency;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Decodes the next sample into the given instance.
+         * @return the node of the sample, or -1 at the end of the recording.
+         */
+        public int next(LapStats stats) {
+            if (hasPeeked) {
+                hasPeeked = false;
+                copy(peeked, stats);
+                node = peekedNode;
+                frequency = peekedFrequency;
+                return node;
+            }
+            return read(stats) ? node : -1;
+        }
+
+        /**
+         * Frequency of the last sample returned by {@link #next(LapStats)}.
+         */
+        public int frequency() {
+            return frequency;
+        }
+
+        private boolean read(LapStats stats) {
+            if (pos >= data.limit()) {
+                node = -1;
+                return false;
+            }
+            if (nextKeyframe < indexSize && pos == indexOffset(nextKeyframe)) {
+                for (int[] p : prev) {
+                    for (int i=0; i<SessionRecorder.FIELDS; i++) {
+                        p[i] = 0;
+                    }
+                }
+                prevTime = 0;
+                nextKeyframe++;
+            }
+            node = readVarint();
+            if (node < 0 || node >= SessionRecorder.MAX_NODES) {
+                pos = data.limit();
+                node = -1;
+                return false;
+            }
+            prevTime += unzigzag(readVarint());
+            stats.t = prevTime;
+            int[] p = prev[node];
+            for (int i=0; i<SessionRecorder.FIELDS; i++) {
+                p[i] += unzigzag(readVarint());
+            }
+            frequency = p[0];
+            stats.laps = p[1];
+            stats.msSinceLastLap = p[2];
+            stats.rssi = p[3];
+            stats.peakRssi = p[4];
+            stats.lastPassPeak = p[5];
+            stats.loopTimeMicros = p[6];
+            stats.flags = p[7];
+            stats.lastPassNadir = p[8];
+            stats.nadirRssi = p[9];
+            stats.historyRssi = p[10];
+            stats.msSinceHistoryStart = p[11];
+            stats.msSinceHistoryEnd = p[12];
+            stats.lapTime = p[13];
+            return true;
+        }
+
+        private int readVarint() {
+            int result = 0;
+            int shift = 0;
+            while (pos < data.limit()) {
+                byte b = data.get(pos++);
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+                shift += 7;
+            }
+            return -1;
+        }
+    }
+
+    static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    static void copy(LapStats from, LapStats to) {
+        to.t = from.t;
+        to.laps = from.laps;
+        to.msSinceLastLap = from.msSinceLastLap;
+        to.rssi = from.rssi;
+        to.peakRssi = from.peakRssi;
+        to.lastPassPeak = from.lastPassPeak;
+        to.loopTimeMicros = from.loopTimeMicros;
+        to.flags = from.flags;
+        to.lastPassNadir = from.lastPassNadir;
+        to.nadirRssi = from.nadirRssi;
+        to.historyRssi = from.historyRssi;
+        to.msSinceHistoryStart = from.msSinceHistoryStart;
+        to.msSinceHistoryEnd = from.msSinceHistoryEnd;
+        to.lapTime = from.lapTime;
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataFile.close();
+        indexFile.close();
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends samples to a memory-mapped session file.
+ * Each record is varint encoded as deltas from the previous record of the same node.
+ * Every {@link #KEYFRAME_INTERVAL} ms the deltas restart from zero and the time and offset are added to a sidecar index,
+ * so a reader can seek anywhere by binary search and decode from the nearest keyframe.
+ * <pre>
+ * header: magic(4) version(2) nodeCount(2) startEpochMillis(8) dataLength(8)
+ * record: node time field*  (varint node, zigzag varint deltas)
+ * index entry: time(4) offset(8)
+ * </pre>
+ */
+public final class SessionRecorder implements Closeable {
+    static final int MAGIC = 0x52485331;
+    static final short VERSION = 2;
+    static final int HEADER_SIZE = 24;
+    static final int VERSION_POS = 4;
+    static final int NODE_COUNT_POS = 6;
+    static final int LENGTH_POS = 16;
+    static final int INDEX_ENTRY_SIZE = 12;
+    static final String INDEX_SUFFIX = ".idx";
+    // frequency then the lap stats fields, including the filtered lap time
+    static final int FIELDS = 14;
+    static final int KEYFRAME_INTERVAL = 1000;
+    static final int MAX_NODES = 64;
+    private static final int MAX_VARINT_SIZE = 5;
+    private static final int MAX_RECORD_SIZE = (2 + FIELDS)*MAX_VARINT_SIZE;
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final RandomAccessFile dataFile;
+    private final RandomAccessFile indexFile;
+    private final FileChannel data;
+    private final FileChannel index;
+    private final ByteBuffer headerUpdate = ByteBuffer.allocate(8);
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+    private MappedByteBuffer buf;
+    private long bufPos;
+    private final int[][] prev = new int[MAX_NODES][FIELDS];
+    private final int[] values = new int[FIELDS];
+    private int prevTime;
+    private int lastTime;
+    private int timeBase;
+    private boolean started;
+    private int nextKeyframe;
+    private int nodeCount;
+    private boolean closed;
+
+    public static SessionRecorder create(File file) throws IOException {
+        return new SessionRecorder(file);
+    }
+
+    private SessionRecorder(File file) throws IOException {
+        dataFile = new RandomAccessFile(file, "rw");
+        indexFile = new RandomAccessFile(new File(file.getPath() + INDEX_SUFFIX), "rw");
+        dataFile.setLength(0L);
+        indexFile.setLength(0L);
+        data = dataFile.getChannel();
+        index = indexFile.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) 0);
+        header.putLong(System.currentTimeMillis());
+        header.putLong(HEADER_SIZE);
+        header.flip();
+        data.write(header, 0L);
+        map(HEADER_SIZE);
+    }
+
+    private void map(long pos) throws IOException {
+        bufPos = pos;
+        buf = data.map(FileChannel.MapMode.READ_WRITE, pos, CHUNK_SIZE);
+    }
+
+    /**
+     * Records a sample, cheap enough to call from the acquisition loop.
+     */
+    public synchronized void record(int node, int freq, LapStats stats) throws IOException {
+        if (closed) {
+            return;
+        }
+        if (node >= MAX_NODES) {
+            throw new IllegalArgumentException(String.format("Node %d out of range", node));
+        }
+        int time = stats.t + timeBase;
+        if (started && time < lastTime - KEYFRAME_INTERVAL) {
+            // the time origin was reset, carry on from where we were so the index stays sorted
+            timeBase += lastTime - time;
+            time = lastTime;
+        }
+        if (!started || time >= nextKeyframe) {
+            keyframe(time);
+        }
+        if (buf.remaining() < MAX_RECORD_SIZE) {
+            map(bufPos + buf.position());
+        }
+        if (node >= nodeCount) {
+            nodeCount = node + 1;
+        }
+        values[0] = freq;
+        values[1] = stats.laps;
+        values[2] = stats.msSinceLastLap;
+        values[3] = stats.rssi;
+        values[4] = stats.peakRssi;
+        values[5] = stats.lastPassPeak;
+        values[6] = stats.loopTimeMicros;
+        values[7] = stats.flags;
+        values[8] = stats.lastPassNadir;
+        values[9] = stats.nadirRssi;
+        values[10] = stats.historyRssi;
+        values[11] = stats.msSinceHistoryStart;
+        values[12] = stats.msSinceHistoryEnd;
+        values[13] = stats.lapTime;
+        putVarint(node);
+        putVarint(zigzag(time - prevTime));
+        prevTime = time;
+        lastTime = Math.max(lastTime, time);
+        int[] prevValues = prev[node];
+        for (int i=0; i<FIELDS; i++) {
+            putVarint(zigzag(values[i] - prevValues[i]));
+            prevValues[i] = values[i];
+        }
+    }
+
+    private void keyframe(int time) throws IOException {
+        long offset = bufPos + buf.position();
+        commitHeader(offset);
+        indexEntry.clear();
+        indexEntry.putInt(time);
+        indexEntry.putLong(offset);
+        indexEntry.flip();
+        index.write(indexEntry);
+        for (int[] p : prev) {
+            for (int i=0; i<FIELDS; i++) {
+                p[i] = 0;
+            }
+        }
+        prevTime = 0;
+        started = true;
+        nextKeyframe = time + KEYFRAME_INTERVAL;
+    }
+
+    /**
+     * Everything before the length in the header is readable, even if the recording is never closed.
+     */
+    private void commitHeader(long length) throws IOException {
+        headerUpdate.clear();
+        headerUpdate.putShort((short) nodeCount);
+        headerUpdate.flip();
+        data.write(headerUpdate, NODE_COUNT_POS);
+        headerUpdate.clear();
+        headerUpdate.putLong(length);
+        headerUpdate.flip();
+        data.write(headerUpdate, LENGTH_POS);
+    }
+
+    private void putVarint(int v) {
+        while ((v & ~0x7F) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long length = bufPos + buf.position();
+        buf.force();
+        commitHeader(length);
+        buf = null;
+        data.truncate(length);
+        dataFile.close();
+        indexFile.close();
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.pulquero.rotordroid;
+
+/**
+ * Statistics of the RSSI of each frequency bin over a sliding window, such as the last N sweeps or T seconds.
+ * Each sample is tagged, with a sweep number or a time, and samples tagged before the start of the window are expired.
+ * Min and max are kept with monotonic deques, mean with a running sum, and percentiles with a histogram of RSSI levels,
+ * so adding and expiring samples is O(1) amortised.
+ * Bins can be updated concurrently from different threads, but each bin only from one thread at a time.
+ */
+final class SpectrumStats {
+    static final int LEVELS = 256;
+
+    private final int minFreq;
+    private final int bins;
+    private final int capacity;
+    private final int[] values;
+    private final long[] tags;
+    /** Sequence number of the oldest sample in the window of each bin. */
+    private final long[] first;
+    /** Sequence number of the next sample of each bin. */
+    private final long[] next;
+    private final long[] sums;
+    private final int[] histograms;
+    private final Deques minDeques;
+    private final Deques maxDeques;
+
+    /**
+     * @param capacity maximum samples per bin in the window, older ones are expired early to make room.
+     */
+    SpectrumStats(int minFreq, int maxFreq, int capacity) {
+        this.minFreq = minFreq;
+        this.bins = maxFreq - minFreq + 1;
+        this.capacity = capacity;
+        this.values = new int[bins*capacity];
+        this.tags = new long[bins*capacity];
+        this.first = new long[bins];
+        this.next = new long[bins];
+        this.sums = new long[bins];
+        this.histograms = new int[bins*LEVELS];
+        this.minDeques = new Deques();
+        this.maxDeques = new Deques();
+    }
+
+    /**
+     * @param rssi clamped to [0, {@link #LEVELS}).
+     */
+    void add(int freq, int rssi, long tag) {
+        int bin = freq - minFreq;
+        int value = Math.max(0, Math.min(LEVELS - 1, rssi));
+        if (next[bin] - first[bin] == capacity) {
+            evict(bin);
+        }
+        long seq = next[bin];
+        int pos = position(bin, seq);
+        values[pos] = value;
+        tags[pos] = tag;
+        while (minDeques.size[bin] > 0 && values[position(bin, minDeques.back(bin))] >= value) {
+            minDeques.popBack(bin);
+        }
+        minDeques.pushBack(bin, seq);
+        while (maxDeques.size[bin] > 0 && values[position(bin, maxDeques.back(bin))] <= value) {
+            maxDeques.popBack(bin);
+        }
+        maxDeques.pushBack(bin, seq);
+        sums[bin] += value;
+        histograms[bin*LEVELS + value]++;
+        next[bin] = seq + 1L;
+    }
+
+    /**
+     * Expires the samples of a bin tagged before the start of the window.
+     */
+    void expire(int freq, long startTag) {
+        int bin = freq - minFreq;
+        while (first[bin] < next[bin] && tags[position(bin, first[bin])] < startTag) {
+            evict(bin);
+        }
+    }
+
+    void expireAll(long startTag) {
+        for (int bin=0; bin<bins; bin++) {
+            expire(minFreq + bin, startTag);
+        }
+    }
+
+    private void evict(int bin) {
+        long seq = first[bin];
+        int value = values[position(bin, seq)];
+        if (minDeques.front(bin) == seq) {
+            minDeques.popFront(bin);
+        }
+        if (maxDeques.front(bin) == seq) {
+            maxDeques.popFront(bin);
+        }
+        sums[bin] -= value;
+        histograms[bin*LEVELS + value]--;
+        first[bin] = seq + 1L;
+    }
+
+    private int position(int bin, long seq) {
+        return bin*capacity + (int) (seq % capacity);
+    }
+
+    int count(int freq) {
+        int bin = freq - minFreq;
+        return (int) (next[bin] - first[bin]);
+    }
+
+    /**
+     * @return 0 if the bin has no samples, check {@link #count(int)} to tell it from a real reading.
+     */
+    int min(int freq) {
+        int bin = freq - minFreq;
+        return count(freq) > 0 ? values[position(bin, minDeques.front(bin))] : 0;
+    }
+
+    int max(int freq) {
+        int bin = freq - minFreq;
+        return count(freq) > 0 ? values[position(bin, maxDeques.front(bin))] : 0;
+    }
+
+    double mean(int freq) {
+        int n = count(freq);
+        return n > 0 ? (double) sums[freq - minFreq]/n : 0.0;
+    }
+
+    /**
+     * Number of samples of the bin at or above the level.
+     */
+    int countAtLeast(int freq, int level) {
+        int offset = (freq - minFreq)*LEVELS;
+        int n = 0;
+        for (int l=Math.max(0, level); l<LEVELS; l++) {
+            n += histograms[offset + l];
+        }
+        return n;
+    }
+
+    /**
+     * @param p between 0 and 100.
+     */
+    int percentile(int freq, double p) {
+        int n = count(freq);
+        if (n == 0) {
+            return 0;
+        }
+        int rank = Math.max(1, (int) Math.ceil(p/100.0*n));
+        int offset = (freq - minFreq)*LEVELS;
+        int seen = 0;
+        for (int level=0; level<LEVELS; level++) {
+            seen += histograms[offset + level];
+            if (seen >= rank) {
+                return level;
+            }
+        }
+        return LEVELS - 1;
+    }
+
+    /**
+     * A ring of sequence numbers per bin, each holding at most the window capacity.
+     */
+    private final class Deques {
+        final long[] seqs = new long[bins*capacity];
+        final int[] head = new int[bins];
+        final int[] size = new int[bins];
+
+        long front(int bin) {
+            return size[bin] > 0 ? seqs[bin*capacity + head[bin]] : -1L;
+        }
+
+        long back(int bin) {
+            return seqs[bin*capacity + (head[bin] + size[bin] - 1) % capacity];
+        }
+
+        void pushBack(int bin, long seq) {
+            seqs[bin*capacity + (head[bin] + size[bin]) % capacity] = seq;
+            size[bin]++;
+        }
+
+        void popBack(int bin) {
+            size[bin]--;
+        }
+
+        void popFront(int bin) {
+            head[bin] = (head[bin] + 1) % capacity;
+            size[bin]--;
+        }
+    }
+}
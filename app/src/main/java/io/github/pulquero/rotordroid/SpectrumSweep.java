@@ -0,0 +1,148 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sweeps a band split across all nodes.
+ * Each sweep is a coarse pass over the whole band followed by a fine pass around the coarse peaks and the race channels.
+ * A frequency is only dwelt on until its RSSI settles.
+ */
+public final class SpectrumSweep extends SplitScan {
+    public interface Listener {
+        /**
+         * Called on the lane of the node that measured it.
+         * @param span number of 1 MHz bins starting at freq the measurement stands for.
+         */
+        void onSample(int index, int freq, int span, int rssi);
+
+        void onSweepComplete(long durationMs);
+    }
+
+    static final int COARSE_STEP = 4;
+    static final int[] RACE_CHANNELS = ChannelPlan.RACEBAND.freqs;
+    private static final int CHANNEL_WIDTH = 2;
+    private static final int PEAK_THRESHOLD = 5;
+    private static final int MAX_PEAKS = 8;
+    private static final int SETTLE_TOLERANCE = 1;
+    private static final long MIN_DWELL_MS = 25L;
+    private static final long MAX_DWELL_MS = 100L;
+
+    private final int minFreq;
+    private final int maxFreq;
+    private final Listener listener;
+    private final long minDwellNanos;
+    private final long maxDwellNanos;
+    private final int[] coarseRssi;
+    private final boolean[] fineMask;
+    private boolean finePass;
+    private long sweepStart;
+
+    public SpectrumSweep(NodeManager nodes, int minFreq, int maxFreq, Listener listener) {
+        this(nodes, minFreq, maxFreq, listener, MIN_DWELL_MS, MAX_DWELL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public SpectrumSweep(NodeManager nodes, int minFreq, int maxFreq, Listener listener, long minDwell, long maxDwell, TimeUnit unit) {
+        super(nodes);
+        this.minFreq = minFreq;
+        this.maxFreq = maxFreq;
+        this.listener = listener;
+        this.minDwellNanos = unit.toNanos(minDwell);
+        this.maxDwellNanos = unit.toNanos(maxDwell);
+        this.coarseRssi = new int[(maxFreq - minFreq)/COARSE_STEP + 1];
+        this.fineMask = new boolean[maxFreq - minFreq + 1];
+    }
+
+    @Override
+    void planFirstPass() {
+        planCoarsePass();
+    }
+
+    private void planCoarsePass() {
+        finePass = false;
+        sweepStart = System.nanoTime();
+        int n = coarseRssi.length;
+        int[] freqs = new int[n];
+        for (int i=0; i<n; i++) {
+            freqs[i] = minFreq + i*COARSE_STEP;
+        }
+        split(freqs, n, Math.min(COARSE_STEP, maxFreq - minFreq + 1));
+    }
+
+    private void planFinePass() {
+        finePass = true;
+        for (int i=0; i<fineMask.length; i++) {
+            fineMask[i] = false;
+        }
+        for (int channel : RACE_CHANNELS) {
+            markFine(channel - CHANNEL_WIDTH, channel + CHANNEL_WIDTH);
+        }
+        int floor = Integer.MAX_VALUE;
+        for (int rssi : coarseRssi) {
+            floor = Math.min(floor, rssi);
+        }
+        int peaks = 0;
+        for (int i=0; i<coarseRssi.length && peaks < MAX_PEAKS; i++) {
+            int rssi = coarseRssi[i];
+            boolean isPeak = rssi >= floor + PEAK_THRESHOLD
+                    && (i == 0 || rssi >= coarseRssi[i-1])
+                    && (i == coarseRssi.length-1 || rssi >= coarseRssi[i+1]);
+            if (isPeak) {
+                int freq = minFreq + i*COARSE_STEP;
+                markFine(freq - COARSE_STEP + 1, freq + 2*COARSE_STEP - 1);
+                peaks++;
+            }
+        }
+        int[] freqs = new int[fineMask.length];
+        int n = 0;
+        for (int i=0; i<fineMask.length; i++) {
+            if (fineMask[i]) {
+                freqs[n++] = minFreq + i;
+            }
+        }
+        split(freqs, n, 1);
+    }
+
+    private void markFine(int from, int to) {
+        for (int freq=Math.max(from, minFreq); freq<=Math.min(to, maxFreq); freq++) {
+            fineMask[freq - minFreq] = true;
+        }
+    }
+
+    @Override
+    void advance() {
+        if (!finePass) {
+            planFinePass();
+        } else {
+            listener.onSweepComplete(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sweepStart));
+            planCoarsePass();
+        }
+    }
+
+    @Override
+    int measure(int index, Node node, LapStats stats, int freq, int span, long tuneTime) throws IOException {
+        int rssi = dwell(node, stats, tuneTime);
+        nodes.record(index, freq, stats);
+        listener.onSample(index, freq, span, rssi);
+        return rssi;
+    }
+
+    @Override
+    void onMeasured(int freq, int rssi) {
+        if (!finePass) {
+            coarseRssi[(freq - minFreq)/COARSE_STEP] = rssi;
+        }
+    }
+
+    private int dwell(Node node, LapStats stats, long tuneTime) throws IOException {
+        sleepUntil(tuneTime, minDwellNanos);
+        node.readLapStats(nodes.currentTime(), stats);
+        while (true) {
+            int lastRssi = stats.rssi;
+            node.readLapStats(nodes.currentTime(), stats);
+            if (Math.abs(stats.rssi - lastRssi) <= SETTLE_TOLERANCE || System.nanoTime() - tuneTime >= maxDwellNanos) {
+                return stats.rssi;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs passes over lists of frequencies split across all nodes.
+ * Each node gets a contiguous part of a pass, so retuning jumps stay small,
+ * and is tuned to its next frequency as soon as it has measured the current one.
+ * The next pass is planned once every node has finished its part.
+ * Subclasses plan and measure while holding the lock of the scan.
+ */
+abstract class SplitScan {
+    private static final long STEP_INTERVAL_MS = 1L;
+
+    final NodeManager nodes;
+    private final Worker[] workers;
+    private int finishedWorkers;
+
+    SplitScan(NodeManager nodes) {
+        this.nodes = nodes;
+        this.workers = new Worker[nodes.size()];
+        for (int i=0; i<workers.length; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    public void start() {
+        synchronized (this) {
+            planFirstPass();
+        }
+        for (int i=0; i<workers.length; i++) {
+            nodes.scheduleWithFixedDelay(i, workers[i], STEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts a pass over the first n frequencies, called with the lock held.
+     * @param span number of 1 MHz bins starting at each frequency a measurement stands for.
+     */
+    final void split(int[] freqs, int n, int span) {
+        finishedWorkers = 0;
+        int start = 0;
+        for (int i=0; i<workers.length; i++) {
+            int end = (int) ((long) n*(i+1)/workers.length);
+            Worker w = workers[i];
+            w.freqs = new int[end - start];
+            System.arraycopy(freqs, start, w.freqs, 0, end - start);
+            w.span = span;
+            w.pos = 0;
+            if (w.freqs.length == 0) {
+                finishedWorkers++;
+            }
+            start = end;
+        }
+        if (finishedWorkers == workers.length) {
+            advance();
+        }
+    }
+
+    /**
+     * Called with the lock held, must {@link #split(int[], int, int)}.
+     */
+    abstract void planFirstPass();
+
+    /**
+     * Called with the lock held once every node has finished the current pass, must {@link #split(int[], int, int)}.
+     */
+    abstract void advance();
+
+    /**
+     * Called on the lane of the node without the lock held, once it is tuned to the frequency.
+     * @param tuneTime System.nanoTime() when the node was tuned.
+     * @return the RSSI.
+     */
+    abstract int measure(int index, Node node, LapStats stats, int freq, int span, long tuneTime) throws IOException;
+
+    /**
+     * Called with the lock held, the pass of the measurement is still the current one.
+     */
+    abstract void onMeasured(int freq, int rssi);
+
+    static void sleepUntil(long tuneTime, long dwellNanos) {
+        long wait = dwellNanos - (System.nanoTime() - tuneTime);
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final class Worker implements NodeManager.NodeTask {
+        final LapStats stats = new LapStats();
+        int[] freqs = new int[0];
+        int span;
+        int pos;
+        int tunedFreq;
+        long tuneTime;
+
+        @Override
+        public void run(int index, Node node) throws IOException {
+            int freq;
+            int freqSpan;
+            synchronized (SplitScan.this) {
+                if (pos >= freqs.length) {
+                    return;
+                }
+                freq = freqs[pos];
+                freqSpan = span;
+            }
+            if (tunedFreq != freq) {
+                node.setFrequency(freq);
+                tunedFreq = freq;
+                tuneTime = System.nanoTime();
+            }
+            int rssi = measure(index, node, stats, freq, freqSpan, tuneTime);
+
+            int nextFreq = 0;
+            synchronized (SplitScan.this) {
+                // the pass can't have moved on, this node hasn't finished its part
+                onMeasured(freq, rssi);
+                pos++;
+                if (pos < freqs.length) {
+                    nextFreq = freqs[pos];
+                } else if (++finishedWorkers == workers.length) {
+                    advance();
+                }
+            }
+            if (nextFreq != 0) {
+                // start settling on the next frequency straight away
+                node.setFrequency(nextFreq);
+                tunedFreq = nextFreq;
+                tuneTime = System.nanoTime();
+            }
+        }
+    }
+}
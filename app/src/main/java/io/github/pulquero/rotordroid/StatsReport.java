@@ -0,0 +1,91 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Summarises the timing statistics of the link, the lanes, the node firmware and the UI,
+ * to tell which one is the bottleneck, and how the detected laps compare with the lap counters of the nodes.
+ * All times are in microseconds, apart from the lap disagreement which is in milliseconds.
+ */
+final class StatsReport {
+    private static final String CSV_HEADER = "node,metric,count,mean,p50,p90,p99,max\n";
+
+    private StatsReport() {
+    }
+
+    /**
+     * @param sampler null if not sampling.
+     * @param lapDetectors null if laps aren't being detected.
+     */
+    static String format(NodeManager nodes, SampleScheduler sampler, LapDetector[] lapDetectors, LatencyHistogram frameTimes, LatencyHistogram renderTimes) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-8s %6s %6s %6s %6s%n", "(us)", "n", "p50", "p99", "max"));
+        for (int i=0; i<nodes.size(); i++) {
+            Node node = nodes.getNode(i);
+            sb.append(String.format(Locale.US, "Node %d: %d frames, %d dropped, %d resyncs, %d bytes skipped, %d errors%n",
+                    i+1, node.receivedFrames(), node.droppedFrames(), node.resyncedFrames(), node.skippedBytes(), nodes.getErrors(i)));
+            if (sampler != null) {
+                sb.append(String.format(Locale.US, " %.0f samples/s, %d throttled, %d skipped%n",
+                        sampler.getRate(i), sampler.getThrottled(i), sampler.getSkipped(i)));
+            }
+            if (lapDetectors != null) {
+                LapDetector detector = lapDetectors[i];
+                sb.append(String.format(Locale.US, " %d laps, %d missed, %d extra, disagreement p50 %d ms, max %d ms%n",
+                        detector.getLaps(), detector.getMissedLaps(), detector.getExtraLaps(),
+                        detector.getDisagreement().percentile(50.0), detector.getDisagreement().max()));
+            }
+            formatLine(sb, " RTT", node.getLapStatsRtt());
+            formatLine(sb, " late", nodes.getLateness(i));
+            formatLine(sb, " loop", node.getLoopTimes());
+        }
+        formatLine(sb, "UI frame", frameTimes);
+        formatLine(sb, "Render", renderTimes);
+        return sb.toString();
+    }
+
+    private static void formatLine(StringBuilder sb, String name, LatencyHistogram h) {
+        sb.append(String.format(Locale.US, "%-8s %6d %6d %6d %6d%n",
+                name, h.count(), h.percentile(50.0), h.percentile(99.0), h.max()));
+    }
+
+    static void writeCsv(Writer out, NodeManager nodes, SampleScheduler sampler, LapDetector[] lapDetectors, LatencyHistogram frameTimes, LatencyHistogram renderTimes) throws IOException {
+        out.write(CSV_HEADER);
+        for (int i=0; i<nodes.size(); i++) {
+            Node node = nodes.getNode(i);
+            writeCsvLine(out, i+1, "frequency_rtt", node.getFrequencyRtt());
+            writeCsvLine(out, i+1, "lap_stats_rtt", node.getLapStatsRtt());
+            writeCsvLine(out, i+1, "lateness", nodes.getLateness(i));
+            writeCsvLine(out, i+1, "loop_time", node.getLoopTimes());
+            writeCsvCount(out, i+1, "frames", node.receivedFrames());
+            writeCsvCount(out, i+1, "dropped_frames", node.droppedFrames());
+            writeCsvCount(out, i+1, "resyncs", node.resyncedFrames());
+            writeCsvCount(out, i+1, "skipped_bytes", node.skippedBytes());
+            writeCsvCount(out, i+1, "errors", nodes.getErrors(i));
+            if (sampler != null) {
+                writeCsvCount(out, i+1, "sample_rate", Math.round(sampler.getRate(i)));
+                writeCsvCount(out, i+1, "throttled", sampler.getThrottled(i));
+                writeCsvCount(out, i+1, "skipped", sampler.getSkipped(i));
+            }
+            if (lapDetectors != null) {
+                LapDetector detector = lapDetectors[i];
+                writeCsvCount(out, i+1, "laps", detector.getLaps());
+                writeCsvCount(out, i+1, "missed_laps", detector.getMissedLaps());
+                writeCsvCount(out, i+1, "extra_laps", detector.getExtraLaps());
+                writeCsvLine(out, i+1, "lap_disagreement", detector.getDisagreement());
+            }
+        }
+        writeCsvLine(out, 0, "ui_frame_time", frameTimes);
+        writeCsvLine(out, 0, "render_time", renderTimes);
+    }
+
+    private static void writeCsvLine(Writer out, int node, String metric, LatencyHistogram h) throws IOException {
+        out.write(String.format(Locale.US, "%d,%s,%d,%.1f,%d,%d,%d,%d\n",
+                node, metric, h.count(), h.mean(), h.percentile(50.0), h.percentile(90.0), h.percentile(99.0), h.max()));
+    }
+
+    private static void writeCsvCount(Writer out, int node, String metric, long count) throws IOException {
+        out.write(String.format(Locale.US, "%d,%s,%d,,,,,\n", node, metric, count));
+    }
+}
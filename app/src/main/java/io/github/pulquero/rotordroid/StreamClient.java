@@ -0,0 +1,151 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reference client of a {@link StreamServer}.
+ * <p>
+ * A datagram is an 8 byte header, 'R' 'H' version count seq[4], followed by count messages of 16 bytes.
+ * A sample is 0x01 node time[4] freq[2] rssi[2], and a lap is 0x02 node time[4] lap[2] lapMillis[4] peakRssi[2],
+ * padded with zeros. Numbers are big-endian. The sequence number increases by one per datagram sent to the client.
+ * Requests are 'R' 'H' version type nonce[8]. A subscribe, type 0x10 with any nonce, is answered with a challenge,
+ * type 0x12 with the nonce of the client, which the client echoes back to confirm, type 0x13, and to unsubscribe, type 0x11.
+ */
+public final class StreamClient implements Closeable {
+    public interface Listener {
+        void onSample(int node, int time, int freq, int rssi);
+
+        void onLap(int node, int lap, int time, int lapMillis, int peakRssi);
+    }
+
+    private final DatagramSocket socket;
+    private final SocketAddress server;
+    private final byte[] rxBuf = new byte[StreamServer.MAX_DATAGRAM_SIZE];
+    private final DatagramPacket rxPacket = new DatagramPacket(rxBuf, rxBuf.length);
+    private final byte[] nonce = new byte[StreamServer.NONCE_SIZE];
+    private boolean hasNonce;
+    private boolean hasSeq;
+    private int nextSeq;
+    private long lost;
+
+    public StreamClient(SocketAddress server) throws IOException {
+        this.socket = new DatagramSocket();
+        this.server = server;
+    }
+
+    /**
+     * Subscribes, or renews the subscription, which must be done within the timeout of the server.
+     * The first time waits for the challenge of the server.
+     */
+    public void subscribe(int timeout) throws IOException {
+        if (!hasNonce) {
+            request(StreamServer.TYPE_SUBSCRIBE);
+            awaitChallenge(timeout);
+        }
+        request(StreamServer.TYPE_CONFIRM);
+    }
+
+    private void awaitChallenge(int timeout) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (true) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0L) {
+                throw new IOException("No answer from the server");
+            }
+            socket.setSoTimeout((int) remaining);
+            rxPacket.setLength(rxBuf.length);
+            try {
+                socket.receive(rxPacket);
+            } catch (SocketTimeoutException ex) {
+                continue;
+            }
+            if (isChallenge()) {
+                System.arraycopy(rxBuf, 4, nonce, 0, StreamServer.NONCE_SIZE);
+                hasNonce = true;
+                return;
+            }
+        }
+    }
+
+    private boolean isChallenge() {
+        return rxPacket.getLength() == StreamServer.REQUEST_SIZE && rxBuf[0] == StreamServer.MAGIC_0 && rxBuf[1] == StreamServer.MAGIC_1
+                && rxBuf[2] == StreamServer.VERSION && rxBuf[3] == StreamServer.TYPE_CHALLENGE;
+    }
+
+    private void request(byte type) throws IOException {
+        byte[] buf = new byte[StreamServer.REQUEST_SIZE];
+        buf[0] = StreamServer.MAGIC_0;
+        buf[1] = StreamServer.MAGIC_1;
+        buf[2] = StreamServer.VERSION;
+        buf[3] = type;
+        System.arraycopy(nonce, 0, buf, 4, StreamServer.NONCE_SIZE);
+        socket.send(new DatagramPacket(buf, buf.length, server));
+    }
+
+    /**
+     * Receives one datagram and passes on its messages.
+     * @return false if none arrived in time.
+     */
+    public boolean receive(int timeout, Listener listener) throws IOException {
+        socket.setSoTimeout(timeout);
+        rxPacket.setLength(rxBuf.length);
+        try {
+            socket.receive(rxPacket);
+        } catch (SocketTimeoutException ex) {
+            return false;
+        }
+        if (isChallenge()) {
+            // a late answer to a subscribe
+            return true;
+        }
+        int len = rxPacket.getLength();
+        if (len < StreamServer.HEADER_SIZE || rxBuf[0] != StreamServer.MAGIC_0 || rxBuf[1] != StreamServer.MAGIC_1 || rxBuf[2] != StreamServer.VERSION) {
+            throw new IOException("Not a stream datagram");
+        }
+        int count = rxBuf[3] & 0xFF;
+        if (len < StreamServer.HEADER_SIZE + count*StreamServer.MESSAGE_SIZE) {
+            throw new IOException(String.format("Truncated datagram %d", len));
+        }
+        int seq = StreamServer.readInt(rxBuf, 4);
+        if (hasSeq && seq != nextSeq) {
+            lost += seq - nextSeq;
+        }
+        hasSeq = true;
+        nextSeq = seq + 1;
+        for (int i=0; i<count; i++) {
+            int pos = StreamServer.HEADER_SIZE + i*StreamServer.MESSAGE_SIZE;
+            int node = rxBuf[pos+1] & 0xFF;
+            int time = StreamServer.readInt(rxBuf, pos+2);
+            if (rxBuf[pos] == StreamServer.TYPE_SAMPLE) {
+                listener.onSample(node, time, Node.read16(rxBuf, pos+6), Node.read16(rxBuf, pos+8));
+            } else if (rxBuf[pos] == StreamServer.TYPE_LAP) {
+                listener.onLap(node, Node.read16(rxBuf, pos+6), time, StreamServer.readInt(rxBuf, pos+8), Node.read16(rxBuf, pos+12));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Datagrams missing from the sequence, lost by the network or the server.
+     */
+    public long getLostDatagrams() {
+        return lost;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (hasNonce) {
+                request(StreamServer.TYPE_UNSUBSCRIBE);
+            }
+        } finally {
+            socket.close();
+        }
+    }
+}
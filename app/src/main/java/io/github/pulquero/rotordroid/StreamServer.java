@@ -0,0 +1,334 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Streams samples and laps of all nodes over UDP to subscribed clients on the local network.
+ * A client subscribes by sending a subscribe datagram to the port, which is answered with a nonce derived from its address,
+ * and is only sent data once it echoes the nonce back, so a spoofed source address can't be made a target.
+ * Answers are no larger than requests. The client has to renew by echoing the nonce again within the client timeout.
+ * Messages are fixed size and batched into datagrams, sent at most every flush interval.
+ * Each client has a bounded queue, and messages are dropped when it is full, so publishing never blocks.
+ * See {@link StreamClient} for the format.
+ */
+public final class StreamServer implements Closeable {
+    static final byte MAGIC_0 = 'R';
+    static final byte MAGIC_1 = 'H';
+    static final byte VERSION = 2;
+    static final byte TYPE_SAMPLE = 0x01;
+    static final byte TYPE_LAP = 0x02;
+    static final byte TYPE_SUBSCRIBE = 0x10;
+    static final byte TYPE_UNSUBSCRIBE = 0x11;
+    static final byte TYPE_CHALLENGE = 0x12;
+    static final byte TYPE_CONFIRM = 0x13;
+    static final int NONCE_SIZE = 8;
+    /** Magic, version, type, nonce. */
+    static final int REQUEST_SIZE = 4 + NONCE_SIZE;
+    /** Magic, version, message count, sequence number. */
+    static final int HEADER_SIZE = 8;
+    static final int MESSAGE_SIZE = 16;
+    /** Fits in an ethernet frame without fragmenting. */
+    static final int MAX_DATAGRAM_SIZE = 1400;
+    static final int MAX_BATCH = (MAX_DATAGRAM_SIZE - HEADER_SIZE)/MESSAGE_SIZE;
+    private static final int MAX_CLIENTS = 8;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final long FLUSH_INTERVAL_MS = 20L;
+    private static final long CLIENT_TIMEOUT_MS = 10000L;
+
+    private final DatagramSocket socket;
+    private final Mac nonceMac;
+    private final byte[] nonce = new byte[NONCE_SIZE];
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long droppedByClosedClients;
+
+    /**
+     * @param address of the interface to listen on, see {@link #findLanAddress()}.
+     * @param port zero for any free port.
+     */
+    public StreamServer(InetAddress address, int port) throws IOException {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        try {
+            nonceMac = Mac.getInstance("HmacSHA256");
+            nonceMac.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (GeneralSecurityException ex) {
+            throw new IOException(ex);
+        }
+        socket = new DatagramSocket(new InetSocketAddress(address, port));
+        thread = new Thread(this::run, "StreamServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The first site-local IPv4 address of an interface that is up, as on a Wi-Fi network or hotspot.
+     */
+    public static InetAddress findLanAddress() throws IOException {
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        if (interfaces != null) {
+            for (NetworkInterface ni : Collections.list(interfaces)) {
+                if (!ni.isUp() || ni.isLoopback()) {
+                    continue;
+                }
+                for (InetAddress address : Collections.list(ni.getInetAddresses())) {
+                    if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                        return address;
+                    }
+                }
+            }
+        }
+        throw new IOException("Not connected to a local network");
+    }
+
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Messages dropped because a client queue was full.
+     */
+    public long getDropped() {
+        long dropped = droppedByClosedClients;
+        for (Client client : clients) {
+            dropped += client.dropped;
+        }
+        return dropped;
+    }
+
+    /**
+     * Can be called from any thread.
+     */
+    public void publishSample(int node, int time, int freq, int rssi) {
+        for (Client client : clients) {
+            client.offerSample(node, time, freq, rssi);
+        }
+    }
+
+    /**
+     * Can be called from any thread.
+     */
+    public void publishLap(int node, int lap, int time, int lapMillis, int peakRssi) {
+        for (Client client : clients) {
+            client.offerLap(node, lap, time, lapMillis, peakRssi);
+        }
+    }
+
+    private void run() {
+        byte[] rxBuf = new byte[MAX_DATAGRAM_SIZE];
+        DatagramPacket rxPacket = new DatagramPacket(rxBuf, rxBuf.length);
+        byte[] txBuf = new byte[MAX_DATAGRAM_SIZE];
+        DatagramPacket txPacket = new DatagramPacket(txBuf, 0);
+        long nextFlush = System.nanoTime();
+        while (running) {
+            try {
+                long wait = nextFlush - System.nanoTime();
+                if (wait > 0L) {
+                    socket.setSoTimeout((int) Math.max(1L, TimeUnit.NANOSECONDS.toMillis(wait)));
+                    rxPacket.setLength(rxBuf.length);
+                    socket.receive(rxPacket);
+                    onRequest(rxPacket);
+                }
+            } catch (SocketTimeoutException ignore) {
+            } catch (IOException ex) {
+                if (!running) {
+                    return;
+                }
+            }
+            long now = System.nanoTime();
+            if (now - nextFlush >= 0L) {
+                for (Client client : clients) {
+                    if (now - client.lastSeen > TimeUnit.MILLISECONDS.toNanos(CLIENT_TIMEOUT_MS)) {
+                        remove(client);
+                    } else {
+                        flush(client, txBuf, txPacket);
+                    }
+                }
+                nextFlush = now + TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS);
+            }
+        }
+    }
+
+    private void onRequest(DatagramPacket packet) throws IOException {
+        byte[] buf = packet.getData();
+        // shorter requests would make the challenge an amplification
+        if (packet.getLength() < REQUEST_SIZE || buf[0] != MAGIC_0 || buf[1] != MAGIC_1 || buf[2] != VERSION) {
+            return;
+        }
+        SocketAddress address = packet.getSocketAddress();
+        computeNonce(packet.getAddress(), packet.getPort());
+        if (buf[3] == TYPE_SUBSCRIBE) {
+            buf[3] = TYPE_CHALLENGE;
+            System.arraycopy(nonce, 0, buf, 4, NONCE_SIZE);
+            packet.setData(buf, 0, REQUEST_SIZE);
+            packet.setSocketAddress(address);
+            socket.send(packet);
+            return;
+        }
+        if (!MessageDigest.isEqual(nonce, Arrays.copyOfRange(buf, 4, REQUEST_SIZE))) {
+            return;
+        }
+        Client existing = null;
+        for (Client client : clients) {
+            if (client.address.equals(address)) {
+                existing = client;
+            }
+        }
+        if (buf[3] == TYPE_CONFIRM) {
+            if (existing != null) {
+                existing.lastSeen = System.nanoTime();
+            } else if (clients.size() < MAX_CLIENTS) {
+                clients.add(new Client(address));
+            }
+        } else if (buf[3] == TYPE_UNSUBSCRIBE && existing != null) {
+            remove(existing);
+        }
+    }
+
+    /**
+     * Keyed hash of the address, so the server doesn't have to keep state for clients that never confirm.
+     */
+    private void computeNonce(InetAddress address, int port) {
+        nonceMac.update(address.getAddress());
+        nonceMac.update((byte) (port >> 8));
+        nonceMac.update((byte) port);
+        System.arraycopy(nonceMac.doFinal(), 0, nonce, 0, NONCE_SIZE);
+    }
+
+    private void remove(Client client) {
+        clients.remove(client);
+        droppedByClosedClients += client.dropped;
+    }
+
+    private void flush(Client client, byte[] txBuf, DatagramPacket txPacket) {
+        int count;
+        while ((count = client.drainTo(txBuf, HEADER_SIZE, MAX_BATCH)) > 0) {
+            txBuf[0] = MAGIC_0;
+            txBuf[1] = MAGIC_1;
+            txBuf[2] = VERSION;
+            txBuf[3] = (byte) count;
+            writeInt(txBuf, 4, client.seq++);
+            txPacket.setData(txBuf, 0, HEADER_SIZE + count*MESSAGE_SIZE);
+            txPacket.setSocketAddress(client.address);
+            try {
+                socket.send(txPacket);
+            } catch (IOException ignore) {
+                // as good as lost by the network, which clients can tell from the sequence number
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        socket.close();
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static void writeInt(byte[] buf, int pos, int v) {
+        buf[pos] = (byte) (v >> 24);
+        buf[pos+1] = (byte) (v >> 16);
+        buf[pos+2] = (byte) (v >> 8);
+        buf[pos+3] = (byte) v;
+    }
+
+    static int readInt(byte[] buf, int pos) {
+        return (buf[pos] & 0xFF) << 24 | (buf[pos+1] & 0xFF) << 16 | (buf[pos+2] & 0xFF) << 8 | buf[pos+3] & 0xFF;
+    }
+
+    /**
+     * Queue of encoded messages, written by the publishers and drained by the server thread.
+     */
+    private static final class Client {
+        final SocketAddress address;
+        final byte[] queue = new byte[QUEUE_CAPACITY*MESSAGE_SIZE];
+        int head;
+        int size;
+        int seq;
+        volatile long lastSeen = System.nanoTime();
+        volatile long dropped;
+
+        Client(SocketAddress address) {
+            this.address = address;
+        }
+
+        synchronized void offerSample(int node, int time, int freq, int rssi) {
+            int pos = reserve();
+            if (pos < 0) {
+                return;
+            }
+            queue[pos] = TYPE_SAMPLE;
+            queue[pos+1] = (byte) node;
+            writeInt(queue, pos+2, time);
+            Node.write16(queue, pos+6, freq);
+            Node.write16(queue, pos+8, rssi);
+        }
+
+        synchronized void offerLap(int node, int lap, int time, int lapMillis, int peakRssi) {
+            int pos = reserve();
+            if (pos < 0) {
+                return;
+            }
+            queue[pos] = TYPE_LAP;
+            queue[pos+1] = (byte) node;
+            writeInt(queue, pos+2, time);
+            Node.write16(queue, pos+6, lap);
+            writeInt(queue, pos+8, lapMillis);
+            Node.write16(queue, pos+12, peakRssi);
+        }
+
+        /**
+         * @return the position of the next message, or -1 if full.
+         */
+        private int reserve() {
+            if (size == QUEUE_CAPACITY) {
+                dropped++;
+                return -1;
+            }
+            int pos = ((head + size) % QUEUE_CAPACITY)*MESSAGE_SIZE;
+            size++;
+            Arrays.fill(queue, pos, pos + MESSAGE_SIZE, (byte) 0);
+            return pos;
+        }
+
+        synchronized int drainTo(byte[] buf, int offset, int max) {
+            int count = Math.min(size, max);
+            for (int i=0; i<count; i++) {
+                System.arraycopy(queue, head*MESSAGE_SIZE, buf, offset + i*MESSAGE_SIZE, MESSAGE_SIZE);
+                head = (head + 1) % QUEUE_CAPACITY;
+            }
+            size -= count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package io.github.pulquero.rotordroid;
+
+/**
+ * Unbounded-duration history kept in bounded memory:
+ * a ring of raw samples plus rings of progressively coarser min/max/mean buckets.
+ * Each add is O(1), the tier rendered is the finest one that covers the visible window within the point budget.
+ */
+public final class TieredXYSeries implements WindowedXYSeries {
+    static final int RAW_CAPACITY = 4096;
+    static final int TIER_CAPACITY = 2048;
+    static final int[] TIER_WIDTHS = {1000, 10000, 60000};
+
+    private final String title;
+    private final boolean envelope;
+    private final int[] rawX = new int[RAW_CAPACITY];
+    private final int[] rawY = new int[RAW_CAPACITY];
+    private int rawStart;
+    private int rawSize;
+    private final Tier[] tiers = new Tier[TIER_WIDTHS.length];
+    private final SeqLock lock = new SeqLock();
+    private volatile int generation;
+
+    /**
+     * @param envelope render buckets as their min and max, rather than their mean.
+     */
+    public TieredXYSeries(String title, boolean envelope) {
+        this.title = title;
+        this.envelope = envelope;
+        for (int i=0; i<tiers.length; i++) {
+            tiers[i] = new Tier(TIER_WIDTHS[i]);
+        }
+    }
+
+    public synchronized void add(int x, int y) {
+        lock.beginWrite();
+        int end = (rawStart + rawSize) & (RAW_CAPACITY-1);
+        rawX[end] = x;
+        rawY[end] = y;
+        if (rawSize < RAW_CAPACITY) {
+            rawSize++;
+        } else {
+            rawStart = (rawStart + 1) & (RAW_CAPACITY-1);
+        }
+        for (Tier tier : tiers) {
+            tier.add(x, y);
+        }
+        lock.endWrite();
+    }
+
+    public synchronized void reset() {
+        lock.beginWrite();
+        rawStart = 0;
+        rawSize = 0;
+        for (Tier tier : tiers) {
+            tier.reset();
+        }
+        generation++;
+        lock.endWrite();
+    }
+
+    @Override
+    public void snapshot(SeriesSnapshot into, int minX, int maxX, int maxPoints) {
+        into.ensureCapacity(maxPoints);
+        while (true) {
+            int seq = lock.beginRead();
+            copyWindow(into, minX, maxX, maxPoints);
+            if (lock.validate(seq, into)) {
+                return;
+            }
+        }
+    }
+
+    private void copyWindow(SeriesSnapshot into, int minX, int maxX, int maxPoints) {
+        into.size = 0;
+        if (rawSize == 0) {
+            return;
+        }
+        int from = lowerBound(rawX, rawStart, rawSize, minX);
+        int to = lowerBound(rawX, rawStart, rawSize, maxX+1);
+        boolean rawCovers = rawSize < RAW_CAPACITY || rawX[rawStart] <= minX;
+        if (rawCovers && to - from <= maxPoints) {
+            // include the neighbours either side so lines reach the edges
+            from = Math.max(from-1, 0);
+            to = Math.min(to+1, rawSize);
+            int n = Math.min(to - from, maxPoints);
+            for (int i=0; i<n; i++) {
+                int idx = (rawStart + from + i) & (RAW_CAPACITY-1);
+                into.xs[i] = rawX[idx];
+                into.ys[i] = rawY[idx];
+            }
+            into.size = n;
+            return;
+        }
+        int pointsPerBucket = envelope ? 2 : 1;
+        for (int t=0; t<tiers.length; t++) {
+            Tier tier = tiers[t];
+            int bFrom = Math.max(lowerBound(tier.start, tier.head, tier.size, minX - tier.width) - 1, 0);
+            int bTo = Math.min(lowerBound(tier.start, tier.head, tier.size, maxX+1) + 1, tier.size);
+            boolean covers = tier.size < TIER_CAPACITY || tier.start[tier.head] <= minX;
+            if ((covers && (bTo - bFrom)*pointsPerBucket <= maxPoints) || t == tiers.length-1) {
+                int n = 0;
+                for (int b=bFrom; b<bTo && n+pointsPerBucket<=maxPoints; b++) {
+                    int idx = (tier.head + b) & (TIER_CAPACITY-1);
+                    int x = tier.start[idx] + tier.width/2;
+                    if (envelope) {
+                        into.xs[n] = x;
+                        into.ys[n++] = tier.min[idx];
+                        into.xs[n] = x;
+                        into.ys[n++] = tier.max[idx];
+                    } else {
+                        int count = tier.count[idx];
+                        if (count == 0) {
+                            // only seen by a read racing a write, which won't validate
+                            continue;
+                        }
+                        into.xs[n] = x;
+                        into.ys[n++] = (int) (tier.sum[idx]/count);
+                    }
+                }
+                into.size = n;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the logical index of the first value >= key in a sorted power-of-two ring.
+     */
+    private static int lowerBound(int[] ring, int start, int size, int key) {
+        int mask = ring.length - 1;
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ring[(start + mid) & mask] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public int generation() {
+        return generation;
+    }
+
+    @Override
+    public void snapshot(SeriesSnapshot into) {
+        into.ensureCapacity(RAW_CAPACITY);
+        while (true) {
+            int seq = lock.beginRead();
+            int n = rawSize;
+            for (int i=0; i<n; i++) {
+                int idx = (rawStart + i) & (RAW_CAPACITY-1);
+                into.xs[i] = rawX[idx];
+                into.ys[i] = rawY[idx];
+            }
+            into.size = n;
+            if (lock.validate(seq, into)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return rawSize;
+    }
+
+    @Override
+    public Number getX(int index) {
+        return rawX[(rawStart + index) & (RAW_CAPACITY-1)];
+    }
+
+    @Override
+    public Number getY(int index) {
+        return rawY[(rawStart + index) & (RAW_CAPACITY-1)];
+    }
+
+    @Override
+    public int[] xValues() {
+        return rawX;
+    }
+
+    @Override
+    public int[] yValues() {
+        return rawY;
+    }
+
+    @Override
+    public int start() {
+        return rawStart;
+    }
+
+    @Override
+    public String getTitle() {
+        return title;
+    }
+
+    private static final class Tier {
+        final int width;
+        final int[] start = new int[TIER_CAPACITY];
+        final int[] min = new int[TIER_CAPACITY];
+        final int[] max = new int[TIER_CAPACITY];
+        final long[] sum = new long[TIER_CAPACITY];
+        final int[] count = new int[TIER_CAPACITY];
+        int head;
+        int size;
+
+        Tier(int width) {
+            this.width = width;
+        }
+
+        void add(int x, int y) {
+            int offset = x % width;
+            int bucketStart = x - (offset < 0 ? offset + width : offset);
+            int last = (head + size - 1) & (TIER_CAPACITY-1);
+            if (size > 0 && start[last] == bucketStart) {
+                min[last] = Math.min(min[last], y);
+                max[last] = Math.max(max[last], y);
+                sum[last] += y;
+                count[last]++;
+                return;
+            }
+            int idx = (head + size) & (TIER_CAPACITY-1);
+            if (size < TIER_CAPACITY) {
+                size++;
+            } else {
+                head = (head + 1) & (TIER_CAPACITY-1);
+            }
+            start[idx] = bucketStart;
+            min[idx] = y;
+            max[idx] = y;
+            sum[idx] = y;
+            count[idx] = 1;
+        }
+
+        void reset() {
+            head = 0;
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.pulquero.rotordroid;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface Transport extends Closeable {
+    void write(byte[] buf, int len, int timeout) throws IOException;
+
+    /**
+     * @return number of bytes read, 0 on timeout.
+     */
+    int read(byte[] buf, int timeout) throws IOException;
+}
@@ -0,0 +1,88 @@
+package io.github.pulquero.rotordroid;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Coalesces UI updates posted from any thread, keeping only the latest of each,
+ * and applies them together once per display frame.
+ * Posting is allocation-free, and at most one runnable is queued on the main looper per frame,
+ * however fast updates are posted.
+ */
+final class UiUpdateBus implements Choreographer.FrameCallback {
+    interface Sink {
+        void onFrequency(int freq);
+        void onFollowTime(int time);
+        void onMessage(String msg);
+    }
+
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private final Sink sink;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger frequency = new AtomicInteger(NONE);
+    private final AtomicInteger followTime = new AtomicInteger(NONE);
+    private final AtomicReference<String> message = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable frameRequester = () -> Choreographer.getInstance().postFrameCallback(this);
+
+    UiUpdateBus(Sink sink) {
+        this.sink = sink;
+    }
+
+    void postFrequency(int freq) {
+        frequency.set(freq);
+        scheduleFrame();
+    }
+
+    void postFollowTime(int time) {
+        followTime.set(time);
+        scheduleFrame();
+    }
+
+    void postMessage(String msg) {
+        message.set(msg);
+        scheduleFrame();
+    }
+
+    private void scheduleFrame() {
+        if (scheduled.compareAndSet(false, true)) {
+            mainHandler.post(frameRequester);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // cleared first, so anything posted from now on gets another frame
+        scheduled.set(false);
+        int freq = frequency.getAndSet(NONE);
+        if (freq != NONE) {
+            sink.onFrequency(freq);
+        }
+        int time = followTime.getAndSet(NONE);
+        if (time != NONE) {
+            sink.onFollowTime(time);
+        }
+        String msg = message.getAndSet(null);
+        if (msg != null) {
+            sink.onMessage(msg);
+        }
+    }
+
+    /**
+     * Drops pending updates, must be called from the UI thread.
+     */
+    void clear() {
+        mainHandler.removeCallbacks(frameRequester);
+        Choreographer.getInstance().removeFrameCallback(this);
+        scheduled.set(false);
+        frequency.set(NONE);
+        followTime.set(NONE);
+        message.set(null);
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.pulquero.rotordroid;
+
+import android.content.Context;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbManager;
+import android.os.Build;
+
+import com.hoho.android.usbserial.driver.UsbSerialDriver;
+import com.hoho.android.usbserial.driver.UsbSerialPort;
+import com.hoho.android.usbserial.driver.UsbSerialProber;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class UsbTransport implements Transport {
+    private static final int MAX_WRITE_SIZE = 64;
+
+    private final UsbSerialPort port;
+    private final String deviceName;
+    private final String deviceKey;
+    // UsbSerialPort.write() always sends the whole array, so keep one exactly sized buffer per length
+    private final byte[][] writeBufs = new byte[MAX_WRITE_SIZE+1][];
+
+    private UsbTransport(UsbSerialPort port, UsbDevice device) {
+        this.port = port;
+        this.deviceName = device.getDeviceName();
+        this.deviceKey = deviceKey(device);
+    }
+
+    /**
+     * Opens every port of every attached device we have permission for.
+     */
+    public static List<UsbTransport> openAll(Context ctx) throws IOException {
+        UsbManager manager = (UsbManager) ctx.getSystemService(Context.USB_SERVICE);
+        List<UsbSerialDriver> availableDrivers = UsbSerialProber.getDefaultProber().findAllDrivers(manager);
+        if (availableDrivers.isEmpty()) {
+            throw new IOException("No compatible USB devices");
+        }
+
+        List<UsbTransport> transports = new ArrayList<>();
+        IOException lastError = null;
+        for (UsbSerialDriver driver : availableDrivers) {
+            try {
+                openPorts(manager, driver, transports);
+            } catch (IOException ex) {
+                lastError = ex;
+            }
+        }
+        if (transports.isEmpty()) {
+            throw lastError != null ? lastError : new IOException("No serial ports on USB devices");
+        }
+        // the nodes may still be booting, see Node.awaitReady()
+        return transports;
+    }
+
+    /**
+     * Opens every port of the device.
+     */
+    public static List<UsbTransport> open(Context ctx, UsbDevice device) throws IOException {
+        UsbManager manager = (UsbManager) ctx.getSystemService(Context.USB_SERVICE);
+        UsbSerialDriver driver = UsbSerialProber.getDefaultProber().probeDevice(device);
+        if (driver == null) {
+            throw new IOException("Not a compatible USB device");
+        }
+        List<UsbTransport> transports = new ArrayList<>();
+        openPorts(manager, driver, transports);
+        return transports;
+    }
+
+    private static void openPorts(UsbManager manager, UsbSerialDriver driver, List<UsbTransport> transports) throws IOException {
+        UsbDevice device = driver.getDevice();
+        if (!manager.hasPermission(device)) {
+            throw new IOException("No permission for USB device");
+        }
+        UsbDeviceConnection connection = manager.openDevice(device);
+        if (connection == null) {
+            throw new IOException("Failed to open USB device");
+        }
+        IOException lastError = null;
+        int opened = 0;
+        for (UsbSerialPort port : driver.getPorts()) {
+            try {
+                port.open(connection);
+                port.setParameters(115200, UsbSerialPort.DATABITS_8, UsbSerialPort.STOPBITS_1, UsbSerialPort.PARITY_NONE);
+                transports.add(new UsbTransport(port, device));
+                opened++;
+            } catch (IOException ex) {
+                lastError = ex;
+            }
+        }
+        if (opened == 0 && lastError != null) {
+            throw lastError;
+        }
+    }
+
+    /**
+     * The device name changes when it is plugged in again, the serial number doesn't, but not every adapter has one.
+     */
+    private static String deviceKey(UsbDevice device) {
+        String serial = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            try {
+                serial = device.getSerialNumber();
+            } catch (SecurityException ignore) {
+                // needs permission on newer versions
+            }
+        }
+        return serial != null ? String.format("%04x:%04x:%s", device.getVendorId(), device.getProductId(), serial) : device.getDeviceName();
+    }
+
+    /**
+     * Whether the transport is on the given device, while it is attached.
+     */
+    boolean isOn(UsbDevice device) {
+        return deviceName.equals(device.getDeviceName());
+    }
+
+    /**
+     * Whether the other transport is the same port of the same device, even if plugged in again.
+     */
+    boolean isSamePort(UsbTransport other) {
+        return deviceKey.equals(other.deviceKey) && port.getPortNumber() == other.port.getPortNumber();
+    }
+
+    @Override
+    public void write(byte[] buf, int len, int timeout) throws IOException {
+        if (len == buf.length) {
+            port.write(buf, timeout);
+            return;
+        }
+        if (len > MAX_WRITE_SIZE) {
+            throw new IOException(String.format("Write too large %d", len));
+        }
+        byte[] writeBuf = writeBufs[len];
+        if (writeBuf == null) {
+            writeBuf = new byte[len];
+            writeBufs[len] = writeBuf;
+        }
+        System.arraycopy(buf, 0, writeBuf, 0, len);
+        port.write(writeBuf, timeout);
+    }
+
+    @Override
+    public int read(byte[] buf, int timeout) throws IOException {
+        return port.read(buf, timeout);
+    }
+
+    @Override
+    public void close() throws IOException {
+        port.close();
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.pulquero.rotordroid;
+
+/**
+ * Ring of sweeps as rows of colour pixels, newest first, in constant memory.
+ * Sweep k goes to row {@code rows - 1 - k % rows}, so the rows from the newest one down
+ * to the bottom, followed by the rows from the top, are in order of age.
+ * Each RSSI is coloured through a precomputed palette.
+ */
+final class Waterfall {
+    interface RowSink {
+        void onRow(int[] pixels, int offset, int row);
+    }
+
+    static final int LEVELS = 256;
+
+    private final int width;
+    private final int rows;
+    private final int[] palette;
+    private final int[] pixels;
+    private long sweeps;
+
+    /**
+     * @param minRssi coloured as the coldest colour, and anything below.
+     * @param maxRssi coloured as the hottest colour, and anything above.
+     */
+    Waterfall(int width, int rows, int minRssi, int maxRssi) {
+        this.width = width;
+        this.rows = rows;
+        this.palette = createPalette(minRssi, maxRssi);
+        this.pixels = new int[width*rows];
+    }
+
+    /**
+     * Black through blue, cyan, yellow and red to white.
+     */
+    static int[] createPalette(int minRssi, int maxRssi) {
+        int[][] stops = {{0, 0, 0}, {0, 0, 255}, {0, 255, 255}, {255, 255, 0}, {255, 0, 0}, {255, 255, 255}};
+        int[] palette = new int[LEVELS];
+        for (int i=0; i<LEVELS; i++) {
+            double v = (double) (i - minRssi)/(maxRssi - minRssi);
+            v = Math.max(0.0, Math.min(1.0, v))*(stops.length - 1);
+            int stop = Math.min((int) v, stops.length - 2);
+            double frac = v - stop;
+            int r = (int) Math.round(stops[stop][0] + frac*(stops[stop+1][0] - stops[stop][0]));
+            int g = (int) Math.round(stops[stop][1] + frac*(stops[stop+1][1] - stops[stop][1]));
+            int b = (int) Math.round(stops[stop][2] + frac*(stops[stop+1][2] - stops[stop][2]));
+            palette[i] = 0xFF000000 | r << 16 | g << 8 | b;
+        }
+        return palette;
+    }
+
+    int width() {
+        return width;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    /**
+     * @param rssi one per pixel, from the lowest frequency.
+     */
+    synchronized void addSweep(int[] rssi) {
+        int offset = row(sweeps)*width;
+        for (int i=0; i<width; i++) {
+            pixels[offset + i] = palette[Math.max(0, Math.min(LEVELS - 1, rssi[i]))];
+        }
+        sweeps++;
+    }
+
+    synchronized long sweeps() {
+        return sweeps;
+    }
+
+    /**
+     * Passes on the rows added since the given number of sweeps, or all of them if the ring has since wrapped.
+     * @return the number of sweeps passed on so far.
+     */
+    synchronized long drainTo(long drained, RowSink sink) {
+        for (long k=Math.max(drained, sweeps - rows); k<sweeps; k++) {
+            int row = row(k);
+            sink.onRow(pixels, row*width, row);
+        }
+        return sweeps;
+    }
+
+    int row(long sweep) {
+        return rows - 1 - (int) (sweep % rows);
+    }
+}
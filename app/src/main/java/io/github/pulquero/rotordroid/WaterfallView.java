@@ -0,0 +1,80 @@
+package io.github.pulquero.rotordroid;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Shows a {@link Waterfall} through an off-screen bitmap of the same ring.
+ * Only new rows are copied to the bitmap, and scrolling is drawing the bitmap in two parts, split at the newest row.
+ */
+public class WaterfallView extends View {
+    private final Paint paint = new Paint();
+    private final Rect src = new Rect();
+    private final Rect dst = new Rect();
+    private volatile Waterfall waterfall;
+    private Bitmap bitmap;
+    private long drained;
+    private final Waterfall.RowSink uploader = (pixels, offset, row) -> bitmap.setPixels(pixels, offset, bitmap.getWidth(), 0, row, bitmap.getWidth(), 1);
+
+    public WaterfallView(Context context) {
+        super(context);
+        paint.setFilterBitmap(false);
+    }
+
+    public WaterfallView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        paint.setFilterBitmap(false);
+    }
+
+    /**
+     * @param waterfall null to show nothing.
+     */
+    void setWaterfall(Waterfall waterfall) {
+        this.waterfall = waterfall;
+        if (bitmap != null) {
+            bitmap.recycle();
+            bitmap = null;
+        }
+        invalidate();
+    }
+
+    /**
+     * Can be called from any thread.
+     */
+    void onSweep() {
+        postInvalidateOnAnimation();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        Waterfall w = waterfall;
+        if (w == null) {
+            return;
+        }
+        int rows = w.rows();
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(w.width(), rows, Bitmap.Config.ARGB_8888);
+            bitmap.eraseColor(Color.BLACK);
+            drained = 0L;
+        }
+        drained = w.drainTo(drained, uploader);
+        int head = drained > 0L ? w.row(drained - 1L) : 0;
+        int width = getWidth();
+        int height = getHeight();
+        int split = (int) ((long) (rows - head)*height/rows);
+        src.set(0, head, w.width(), rows);
+        dst.set(0, 0, width, split);
+        canvas.drawBitmap(bitmap, src, dst, paint);
+        if (head > 0) {
+            src.set(0, 0, w.width(), head);
+            dst.set(0, split, width, height);
+            canvas.drawBitmap(bitmap, src, dst, paint);
+        }
+    }
+}
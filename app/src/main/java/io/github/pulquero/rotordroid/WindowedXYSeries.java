@@ -0,0 +1,17 @@
+package io.github.pulquero.rotordroid;
+
+/**
+ * Series that can pick a representation to suit the visible domain.
+ */
+public interface WindowedXYSeries extends IntXYSeries {
+    /**
+     * Like {@link #snapshot(SeriesSnapshot)} but restricted to [minX, maxX] and at most maxPoints points.
+     */
+    void snapshot(SeriesSnapshot into, int minX, int maxX, int maxPoints);
+
+    /**
+     * Changes whenever points are removed other than by ageing out, so anything derived from them can be discarded.
+     * Otherwise points are only appended in x order.
+     */
+    int generation();
+}
@@ -0,0 +1,99 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ChannelScanTest {
+    private static final int MIN_FREQ = 5645;
+    private static final int MAX_FREQ = 5945;
+
+    @Test
+    public void plan_withGapsAddsMidpoints() {
+        ChannelPlan plan = new ChannelPlan("Test", 5800, 5740, 5760, 5740).withGaps();
+        assertEquals(5, plan.size());
+        int[] expected = {5740, 5750, 5760, 5780, 5800};
+        for (int i=0; i<expected.length; i++) {
+            assertEquals(expected[i], plan.getFrequency(i));
+        }
+        assertEquals(4, ChannelPlan.BOSCAM_E.within(5645, 5800).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void scan_rejectsNoBackgroundInterval() throws Exception {
+        try (NodeManager nodes = new NodeManager(Collections.singletonList(new NodeSimulator(0)))) {
+            new ChannelScan(nodes, ChannelPlan.RACEBAND, MIN_FREQ, MAX_FREQ, null, 25L, TimeUnit.MILLISECONDS, 0);
+        }
+    }
+
+    @Test
+    public void scan_reportsOccupiedChannels() throws Exception {
+        int occupied = ChannelPlan.RACEBAND.getFrequency(3);
+        List<Transport> transports = new ArrayList<>();
+        for (int i=0; i<4; i++) {
+            transports.add(new NodeSimulator(i)
+                    .addPilot(occupied, 10000, 0)
+                    .setLatency(2L, 0L, TimeUnit.MILLISECONDS));
+        }
+        ChannelPlan plan = ChannelPlan.RACEBAND.withGaps();
+        int cycles = 5;
+        CountDownLatch done = new CountDownLatch(cycles);
+        AtomicReference<ChannelScan.Report> lastReport = new AtomicReference<>();
+        int[] backgroundSamples = new int[1];
+        int[] backgroundAtCycle = new int[cycles];
+        int[] completed = new int[1];
+        try (NodeManager nodes = new NodeManager(transports)) {
+            new ChannelScan(nodes, plan, MIN_FREQ, MAX_FREQ, new ChannelScan.Listener() {
+                @Override
+                public void onSample(int index, int freq, int span, int rssi) {
+                    if (span > 1) {
+                        synchronized (backgroundSamples) {
+                            backgroundSamples[0]++;
+                        }
+                    }
+                }
+
+                @Override
+                public void onCycleComplete(long durationMs, ChannelScan.Report report) {
+                    synchronized (backgroundSamples) {
+                        if (completed[0] < cycles) {
+                            backgroundAtCycle[completed[0]++] = backgroundSamples[0];
+                        }
+                    }
+                    lastReport.set(report);
+                    done.countDown();
+                }
+            }, 25L, TimeUnit.MILLISECONDS, 3).start();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            nodes.cancelAll();
+        }
+        int backgroundPass = (MAX_FREQ - MIN_FREQ)/ChannelScan.BACKGROUND_STEP + 1;
+        synchronized (backgroundSamples) {
+            assertEquals(cycles, completed[0]);
+            // the initial pass, then one after every third cycle
+            for (int i=0; i<cycles; i++) {
+                assertEquals("Background samples before cycle " + i, (1 + i/3)*backgroundPass, backgroundAtCycle[i]);
+            }
+        }
+
+        ChannelScan.Report report = lastReport.get();
+        assertEquals(plan.size(), report.freqs.length);
+        assertTrue("Band noise floor " + report.bandNoiseFloor, Math.abs(report.bandNoiseFloor - 30) <= 5);
+        for (int i=0; i<report.freqs.length; i++) {
+            if (report.freqs[i] == occupied) {
+                assertEquals(100, report.occupancy[i]);
+                assertTrue(report.noiseFloor[i] >= report.bandNoiseFloor + ChannelScan.OCCUPIED_MARGIN);
+            } else {
+                assertEquals("Occupancy of " + report.freqs[i], 0, report.occupancy[i]);
+                assertTrue(Math.abs(report.noiseFloor[i] - report.bandNoiseFloor) <= 5);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ClockSyncTest {
+    private static final long ORIGIN_NANOS = 123456789L;
+    private static final double LINK_LATENCY_MS = 1.0;
+    private static final double DRIFT = 50e-6;
+    private static final long INTERVAL_MS = 50L;
+
+    private final Random random = new Random(42L);
+
+    @Test
+    public void lapTime_convergesWithJitteryLink() {
+        ClockSync sync = new ClockSync();
+        double lapTime = 1000.3;
+        double maxError = 0.0;
+        double maxNaiveError = 0.0;
+        for (long t=2000L; t<20000L; t+=INTERVAL_MS) {
+            Exchange ex = exchange(t, lapTime);
+            sync.onRequest(t, ex.sendNanos);
+            double estimate = sync.onLapStats(ex.recvNanos, ex.recvNanos - ex.sendNanos, 1, ex.msSinceLap);
+            if (t > 5000L) {
+                maxError = Math.max(maxError, Math.abs(estimate - ex.answerTime));
+                maxNaiveError = Math.max(maxNaiveError, Math.abs(ex.midTime - ex.answerTime));
+            }
+        }
+        assertEquals(lapTime, sync.lapTime(), 1.0);
+        assertTrue("Uncertainty " + sync.lapUncertainty(), sync.lapUncertainty() < 1.0);
+        assertEquals(lapTime, sync.lapTime(), sync.lapUncertainty());
+        assertTrue("Max error " + maxError, maxError < 1.5);
+        // at least a quarter better than taking the midpoint of the round trip
+        assertTrue("Max error " + maxError + ", naive " + maxNaiveError, maxError < 0.75*maxNaiveError);
+    }
+
+    @Test
+    public void drift_isTracked() {
+        ClockSync sync = new ClockSync();
+        double lapTime = 0.0;
+        for (long t=100L; t<600000L; t+=INTERVAL_MS) {
+            // a lap every minute so the node counter doesn't wrap
+            if (t - lapTime > 60000.0) {
+                lapTime = t - 10.0;
+            }
+            Exchange ex = exchange(t, lapTime);
+            sync.onRequest(t, ex.sendNanos);
+            sync.onLapStats(ex.recvNanos, ex.recvNanos - ex.sendNanos, (int) (t/60000L), ex.msSinceLap);
+        }
+        assertEquals(DRIFT, sync.drift(), 20e-6);
+    }
+
+    @Test
+    public void timeReset_restartsEstimate() {
+        ClockSync sync = new ClockSync();
+        for (long t=2000L; t<5000L; t+=INTERVAL_MS) {
+            Exchange ex = exchange(t, 1000.0);
+            sync.onRequest(t, ex.sendNanos);
+            sync.onLapStats(ex.recvNanos, ex.recvNanos - ex.sendNanos, 1, ex.msSinceLap);
+        }
+        // the host time origin moves forward by 4 s, the lap is now in the past
+        for (long t=1000L; t<3000L; t+=INTERVAL_MS) {
+            Exchange ex = exchange(t + 4000L, 1000.0);
+            sync.onRequest(t, ex.sendNanos);
+            sync.onLapStats(ex.recvNanos, ex.recvNanos - ex.sendNanos, 1, ex.msSinceLap);
+        }
+        assertEquals(-3000.0, sync.lapTime(), 1.5);
+    }
+
+    private static final class Exchange {
+        long sendNanos;
+        long recvNanos;
+        double answerTime;
+        double midTime;
+        int msSinceLap;
+    }
+
+    /**
+     * The request waits up to a few ms on the way out or back, as with USB polling and thread wake-ups.
+     */
+    private Exchange exchange(long t, double lapTime) {
+        Exchange ex = new Exchange();
+        double send = t + random.nextDouble();
+        double outbound = LINK_LATENCY_MS/2 + (random.nextInt(4) == 0 ? 4.0*random.nextDouble() : 0.0);
+        double inbound = LINK_LATENCY_MS/2 + (random.nextInt(4) == 0 ? 4.0*random.nextDouble() : 0.0);
+        ex.answerTime = send + outbound;
+        double recv = ex.answerTime + inbound;
+        ex.sendNanos = ORIGIN_NANOS + (long) (send*1e6);
+        ex.recvNanos = ORIGIN_NANOS + (long) (recv*1e6);
+        ex.midTime = (send + recv)/2;
+        ex.msSinceLap = (int) Math.floor((ex.answerTime - lapTime)/(1.0 + DRIFT));
+        return ex;
+    }
+}
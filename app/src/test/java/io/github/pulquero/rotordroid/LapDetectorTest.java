@@ -0,0 +1,125 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LapDetectorTest {
+    private static final int ENTER_AT = 90;
+    private static final int EXIT_AT = 80;
+    private static final int MIN_LAP_MILLIS = 1000;
+    private static final int LAP_MILLIS = 2000;
+    private static final int FIRST_PASS = 500;
+    private static final long SAMPLE_INTERVAL_MS = 50L;
+
+    private final List<int[]> laps = new ArrayList<>();
+
+    @Test
+    public void simulatedPasses_matchNodeLaps() throws IOException {
+        NodeSimulator.VirtualClock clock = new NodeSimulator.VirtualClock();
+        NodeSimulator sim = new NodeSimulator(7L, clock).addPilot(5800, LAP_MILLIS, FIRST_PASS);
+        Node node = new Node(sim);
+        LapDetector detector = newDetector();
+        LapStats stats = new LapStats();
+        for (long t=SAMPLE_INTERVAL_MS; t<=60000L; t+=SAMPLE_INTERVAL_MS) {
+            clock.advance(TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL_MS));
+            node.readLapStats(t, stats);
+            // on the simulator's clock rather than the host's
+            stats.t = (int) t;
+            detector.onSample(stats);
+        }
+
+        assertEquals(sim.getLaps(), detector.getLaps());
+        assertEquals(detector.getLaps(), laps.size());
+        for (int i=0; i<laps.size(); i++) {
+            int[] lap = laps.get(i);
+            assertEquals(i+1, lap[0]);
+            // within the noise the top of a pass is tens of ms wide
+            assertEquals(FIRST_PASS + i*LAP_MILLIS, lap[1], 50);
+            if (i > 0) {
+                assertEquals(LAP_MILLIS, lap[2], 100);
+            }
+        }
+        assertTrue(detector.getMatchedLaps() >= detector.getLaps() - 1);
+        assertEquals(0, detector.getMissedLaps());
+        assertEquals(0, detector.getExtraLaps());
+        assertTrue(detector.getDisagreement().max() < 100L);
+    }
+
+    @Test
+    public void hysteresis_ignoresNoiseAroundEnterLevel() {
+        LapDetector detector = newDetector();
+        int[] rssi = {60, 85, 91, 86, 92, 85, 91, 83, 70, 60};
+        feed(detector, rssi, 0);
+        assertEquals(1, laps.size());
+        assertEquals(40, laps.get(0)[1]);
+        assertEquals(92, laps.get(0)[3]);
+    }
+
+    @Test
+    public void passesCloserThanMinLap_areIgnored() {
+        LapDetector detector = newDetector();
+        int[] pass = {60, 95, 100, 95, 60};
+        feed(detector, pass, 0);
+        feed(detector, pass, 500);
+        feed(detector, pass, 3000);
+        assertEquals(2, laps.size());
+        assertEquals(3000, laps.get(1)[2]);
+    }
+
+    @Test
+    public void historyPeak_betweenSamples_isDetected() {
+        LapDetector detector = newDetector();
+        LapStats stats = new LapStats();
+        stats.t = 100;
+        stats.rssi = 60;
+        detector.onSample(stats);
+        stats.t = 200;
+        stats.rssi = 70;
+        stats.historyRssi = 110;
+        stats.msSinceHistoryStart = 60;
+        stats.msSinceHistoryEnd = 40;
+        detector.onSample(stats);
+        assertEquals(1, laps.size());
+        assertEquals(150, laps.get(0)[1]);
+        assertEquals(110, laps.get(0)[3]);
+    }
+
+    @Test
+    public void interleavedNodes_areDetectedIndependently() {
+        LapDetector[] detectors = new LapDetector[8];
+        int[] lapCounts = new int[detectors.length];
+        for (int i=0; i<detectors.length; i++) {
+            detectors[i] = new LapDetector(i, ENTER_AT, EXIT_AT, MIN_LAP_MILLIS, (index, lap, time, lapMillis, peakRssi) -> lapCounts[index]++);
+        }
+        LapStats stats = new LapStats();
+        int samples = 40*LAP_MILLIS*detectors.length;
+        for (int i=0; i<samples; i++) {
+            stats.t = i;
+            stats.rssi = 60 + (i % LAP_MILLIS < 100 ? 40 : 0);
+            detectors[i % detectors.length].onSample(stats);
+        }
+        for (int i=0; i<detectors.length; i++) {
+            assertEquals(samples/LAP_MILLIS, detectors[i].getLaps());
+            assertEquals(samples/LAP_MILLIS, lapCounts[i]);
+        }
+    }
+
+    private LapDetector newDetector() {
+        return new LapDetector(0, ENTER_AT, EXIT_AT, MIN_LAP_MILLIS, (index, lap, time, lapMillis, peakRssi) -> laps.add(new int[] {lap, time, lapMillis, peakRssi}));
+    }
+
+    private static void feed(LapDetector detector, int[] rssi, int startTime) {
+        LapStats stats = new LapStats();
+        for (int i=0; i<rssi.length; i++) {
+            stats.t = startTime + i*10;
+            stats.rssi = rssi[i];
+            detector.onSample(stats);
+        }
+    }
+}
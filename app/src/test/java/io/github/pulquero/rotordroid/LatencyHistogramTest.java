@@ -0,0 +1,45 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void buckets_areWithinRelativeError() {
+        for (long v=0; v<1000000L; v+=1 + v/100) {
+            int b = LatencyHistogram.bucket(v);
+            long lower = LatencyHistogram.lowerBound(b);
+            assertTrue(v + " below bucket " + lower, lower <= v);
+            assertTrue(v + " too far from " + lower, v - lower <= v/16);
+            assertTrue(LatencyHistogram.lowerBound(b + 1) > v);
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles_ofUniformValues() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i=1; i<=10000; i++) {
+            h.record(i);
+        }
+        assertEquals(10000L, h.count());
+        assertEquals(10000L, h.max());
+        assertEquals(5000.5, h.mean(), 0.001);
+        assertEquals(5000.0, h.percentile(50.0), 5000.0/16);
+        assertEquals(9900.0, h.percentile(99.0), 9900.0/16);
+        assertEquals(1L, h.percentile(0.0));
+        assertEquals(10000L, h.percentile(100.0), 10000.0/16);
+    }
+
+    @Test
+    public void negativeValues_countAsZero() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-5L);
+        assertEquals(1L, h.count());
+        assertEquals(0L, h.percentile(50.0));
+        h.reset();
+        assertEquals(0L, h.count());
+        assertEquals(0L, h.percentile(50.0));
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class NodeAllocationTest {
+    private static final int WARMUP_SAMPLES = 20000;
+    private static final int SAMPLES = 10000;
+
+    @Test
+    public void readLapStats_doesNotAllocate() throws IOException {
+        Node node = new Node(new LapStatsTransport());
+        LapStats stats = new LapStats();
+        for (int i=0; i<WARMUP_SAMPLES; i++) {
+            node.readLapStats(i, stats);
+            node.readLapStatsAndSetFrequency(i, 5800, stats);
+        }
+
+        long allocated = allocatedBytes(() -> {
+            for (int i=0; i<SAMPLES; i++) {
+                node.readLapStats(i, stats);
+                node.readLapStatsAndSetFrequency(i, 5800, stats);
+            }
+        });
+
+        assertEquals(0L, allocated);
+        assertEquals(186, stats.rssi);
+        assertEquals(3, stats.laps);
+        assertEquals(1234, stats.msSinceLastLap);
+        assertEquals(1000, stats.loopTimeMicros);
+        assertEquals(90, stats.peakRssi);
+        assertEquals(20, stats.nadirRssi);
+    }
+
+    interface IORunnable {
+        void run() throws IOException;
+    }
+
+    private static long allocatedBytes(IORunnable r) throws IOException {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long overheadStart = mx.getThreadAllocatedBytes(tid);
+        long overheadEnd = mx.getThreadAllocatedBytes(tid);
+        long start = mx.getThreadAllocatedBytes(tid);
+        r.run();
+        long end = mx.getThreadAllocatedBytes(tid);
+        return (end - start) - (overheadEnd - overheadStart);
+    }
+
+    /**
+     * Answers every lap stats command with the same canned response.
+     */
+    static final class LapStatsTransport implements Transport {
+        private final byte[] response = new byte[17];
+        private int pendingResponses;
+
+        LapStatsTransport() {
+            response[0] = 3;
+            Node.write16(response, 1, 1234);
+            response[3] = (byte) 186;
+            response[4] = 90;
+            response[5] = 88;
+            Node.write16(response, 6, 1000);
+            response[10] = 20;
+            response[16] = Node.calculateChecksum(response, 0, 16);
+        }
+
+        @Override
+        public void write(byte[] buf, int len, int timeout) {
+            for (int i=0; i<len; i++) {
+                if (buf[i] == 0x05) {
+                    pendingResponses++;
+                } else if (buf[i] == 0x51) {
+                    i += 3;
+                }
+            }
+        }
+
+        @Override
+        public int read(byte[] buf, int timeout) {
+            int len = 0;
+            while (pendingResponses > 0 && len + response.length <= buf.length) {
+                System.arraycopy(response, 0, buf, len, response.length);
+                len += response.length;
+                pendingResponses--;
+            }
+            return len;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
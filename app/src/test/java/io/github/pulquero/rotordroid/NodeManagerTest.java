@@ -0,0 +1,116 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class NodeManagerTest {
+    private static final long LINK_LATENCY_MS = 2L;
+    private static final int NODE_COUNT = 4;
+    private static final int MIN_SAMPLES = 20;
+
+    @Test
+    public void sampleAll_allLanesMakeProgress() throws Exception {
+        List<Transport> transports = new ArrayList<>();
+        for (int i=0; i<NODE_COUNT; i++) {
+            transports.add(new NodeSimulator(i).setLatency(LINK_LATENCY_MS, 0L, TimeUnit.MILLISECONDS));
+        }
+        AtomicIntegerArray counts = new AtomicIntegerArray(NODE_COUNT);
+        CountDownLatch progressed = new CountDownLatch(NODE_COUNT);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        try (NodeManager nodes = new NodeManager(transports)) {
+            nodes.setErrorListener((index, ex) -> error.compareAndSet(null, ex));
+            nodes.sampleAll(0L, TimeUnit.MILLISECONDS, (index, stats) -> {
+                if (counts.incrementAndGet(index) == MIN_SAMPLES) {
+                    progressed.countDown();
+                }
+            });
+            assertTrue("Lanes stalled: " + counts, progressed.await(10L, TimeUnit.SECONDS));
+            nodes.cancelAll();
+        }
+        assertNull(error.get());
+    }
+
+    @Test
+    public void awaitReady_returnsOnceNodesBoot() throws Exception {
+        BootingTransport slow = new BootingTransport(new NodeSimulator(1L), 300L);
+        BootingTransport fast = new BootingTransport(new NodeSimulator(2L), 100L);
+        try (NodeManager nodes = new NodeManager(Arrays.asList(slow, fast))) {
+            nodes.awaitReady(10L, TimeUnit.SECONDS);
+            // only returns once both have booted
+            assertTrue(slow.booted);
+            assertTrue(fast.booted);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void awaitReady_failsIfNodeNeverAnswers() throws Exception {
+        try (NodeManager nodes = new NodeManager(Collections.singletonList(new BootingTransport(new NodeSimulator(1L), Long.MAX_VALUE)))) {
+            nodes.awaitReady(300L, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void reconnect_restoresFrequencyAndResumesSampling() throws Exception {
+        NodeSimulator replacement = new NodeSimulator(2L);
+        AtomicInteger count = new AtomicInteger();
+        try (NodeManager nodes = new NodeManager(Collections.singletonList(new NodeSimulator(1L)))) {
+            nodes.submit(0, (index, node) -> node.setFrequency(5880)).get();
+            Node old = nodes.getNode(0);
+            nodes.sampleAll(0L, TimeUnit.MILLISECONDS, (index, stats) -> count.incrementAndGet());
+            // detached then attached again
+            nodes.disconnect(0).get();
+            nodes.reconnect(0, replacement, 1L, TimeUnit.SECONDS).get();
+            assertNotSame(old, nodes.getNode(0));
+            assertEquals(5880, replacement.getFrequency());
+            int before = count.get();
+            Thread.sleep(100L);
+            assertTrue(count.get() > before);
+            assertTrue(nodes.getNode(0).receivedFrames() > 1L);
+            nodes.cancelAll();
+        }
+    }
+
+    /**
+     * Ignores commands until it has booted.
+     */
+    private static final class BootingTransport implements Transport {
+        private final Transport transport;
+        private final long bootTime;
+        volatile boolean booted;
+
+        BootingTransport(Transport transport, long bootMillis) {
+            this.transport = transport;
+            this.bootTime = bootMillis == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(bootMillis);
+        }
+
+        @Override
+        public void write(byte[] buf, int len, int timeout) throws IOException {
+            if (bootTime != Long.MAX_VALUE && System.nanoTime() - bootTime >= 0L) {
+                transport.write(buf, len, timeout);
+                booted = true;
+            }
+        }
+
+        @Override
+        public int read(byte[] buf, int timeout) throws IOException {
+            return transport.read(buf, timeout);
+        }
+
+        @Override
+        public void close() throws IOException {
+            transport.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NodeSimulatorTest {
+    private static final int LAP_MILLIS = 2000;
+
+    @Test
+    public void frequency_roundTrips() throws IOException {
+        Node node = new Node(new NodeSimulator(1L, new NodeSimulator.VirtualClock()));
+        assertEquals(5800, node.getFrequency());
+        node.setFrequency(5658);
+        assertEquals(5658, node.getFrequency());
+    }
+
+    @Test
+    public void passes_countAsLaps() throws IOException {
+        NodeSimulator.VirtualClock clock = new NodeSimulator.VirtualClock();
+        NodeSimulator sim = new NodeSimulator(2L, clock)
+                .addPilot(5800, LAP_MILLIS, 500)
+                .setLatency(1L, 0L, TimeUnit.MILLISECONDS);
+        Node node = new Node(sim);
+        LapStats stats = new LapStats();
+        int maxRssi = 0;
+        long start = System.nanoTime();
+        // a minute of virtual time
+        for (int i=0; i<60000; i++) {
+            node.readLapStats(i, stats);
+            maxRssi = Math.max(maxRssi, stats.rssi);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(30, stats.laps, 1);
+        assertEquals(sim.getLaps(), stats.laps);
+        assertTrue(stats.msSinceLastLap < LAP_MILLIS);
+        assertTrue(maxRssi > 100);
+        assertEquals(maxRssi, stats.peakRssi);
+        assertTrue(stats.lastPassPeak > 100);
+        assertTrue(stats.nadirRssi < stats.lastPassPeak - 30);
+        assertTrue("Took " + elapsedMs + " ms", elapsedMs < 30000L);
+    }
+
+    @Test
+    public void strongSignal_isDecodedAbove127() throws IOException {
+        NodeSimulator sim = new NodeSimulator(4L, new NodeSimulator.VirtualClock())
+                .addPilot(5800, LAP_MILLIS, 500)
+                .setSignal(140, 240)
+                .setLatency(1L, 0L, TimeUnit.MILLISECONDS);
+        Node node = new Node(sim);
+        LapStats stats = new LapStats();
+        int minRssi = Integer.MAX_VALUE;
+        for (int i=0; i<LAP_MILLIS; i++) {
+            node.readLapStats(i, stats);
+            minRssi = Math.min(minRssi, stats.rssi);
+        }
+        assertTrue(minRssi > 127);
+        assertTrue(stats.peakRssi > 230);
+        assertTrue(stats.peakRssi <= 255);
+        assertTrue(stats.historyRssi > 127);
+    }
+
+    @Test
+    public void detuned_seesNoPasses() throws IOException {
+        NodeSimulator sim = new NodeSimulator(3L, new NodeSimulator.VirtualClock())
+                .addPilot(5800, LAP_MILLIS, 0)
+                .setFrequency(5840)
+                .setLatency(1L, 0L, TimeUnit.MILLISECONDS);
+        Node node = new Node(sim);
+        LapStats stats = new LapStats();
+        for (int i=0; i<10000; i++) {
+            node.readLapStats(i, stats);
+        }
+        assertEquals(0, stats.laps);
+        assertTrue(stats.peakRssi < 40);
+    }
+
+    @Test
+    public void corruption_isDroppedAndRecovered() throws IOException {
+        NodeSimulator sim = new NodeSimulator(4L, new NodeSimulator.VirtualClock())
+                .addPilot(5800, LAP_MILLIS, 0)
+                .setLatency(1L, 1L, TimeUnit.MILLISECONDS)
+                .setCorruption(0.05, 0.01);
+        Node node = new Node(sim);
+        LapStats stats = new LapStats();
+        int errors = 0;
+        int reads = 0;
+        for (int i=0; i<5000; i++) {
+            try {
+                node.readLapStats(i, stats);
+                reads++;
+            } catch (IOException ex) {
+                errors++;
+            }
+        }
+        assertTrue(errors > 0);
+        assertTrue(reads > 4000);
+        assertTrue(node.droppedFrames() + node.resyncedFrames() > 0);
+        assertTrue(node.skippedBytes() > 0);
+        node.readLapStats(0, stats);
+    }
+}
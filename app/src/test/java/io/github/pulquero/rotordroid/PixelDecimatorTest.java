@@ -0,0 +1,103 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PixelDecimatorTest {
+    private static final int COLUMNS = 100;
+
+    @Test
+    public void columns_keepFirstMinMaxLast() {
+        TieredXYSeries series = new TieredXYSeries("test", true);
+        Random random = new Random(1L);
+        int n = 3000;
+        int[] ys = new int[n];
+        for (int x=0; x<n; x++) {
+            ys[x] = random.nextInt(150);
+            series.add(x, ys[x]);
+        }
+        double minX = 500.0;
+        double maxX = 2500.0;
+        SeriesSnapshot out = new PixelDecimator().decimate(series, minX, maxX, COLUMNS);
+        assertTrue(out.size() <= 4*(COLUMNS + 2) + 1);
+
+        double width = (maxX - minX)/COLUMNS;
+        // the neighbour before the window
+        assertEquals(499, out.x(0));
+        for (long c=(long) Math.floor(minX/width); c<=(long) Math.floor(maxX/width); c++) {
+            int from = (int) Math.max(Math.ceil(c*width), minX);
+            int to = (int) Math.min(Math.ceil((c+1)*width) - 1, maxX);
+            if (from > to) {
+                continue;
+            }
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int x=from; x<=to; x++) {
+                min = Math.min(min, ys[x]);
+                max = Math.max(max, ys[x]);
+            }
+            int outMin = Integer.MAX_VALUE;
+            int outMax = Integer.MIN_VALUE;
+            int first = -1;
+            int last = -1;
+            for (int i=1; i<out.size(); i++) {
+                if (out.x(i) >= from && out.x(i) <= to) {
+                    outMin = Math.min(outMin, out.y(i));
+                    outMax = Math.max(outMax, out.y(i));
+                    if (first == -1) {
+                        first = out.x(i);
+                    }
+                    last = out.x(i);
+                }
+            }
+            assertEquals(min, outMin);
+            assertEquals(max, outMax);
+            assertEquals(from, first);
+            assertEquals(to, last);
+        }
+    }
+
+    @Test
+    public void scrolling_matchesFullRecompute() {
+        TieredXYSeries series = new TieredXYSeries("test", true);
+        Random random = new Random(2L);
+        PixelDecimator incremental = new PixelDecimator();
+        int span = 1000;
+        int x = 0;
+        for (int frame=0; frame<200; frame++) {
+            for (int i=random.nextInt(20); i>0; i--) {
+                series.add(x, random.nextInt(150));
+                x += 1 + random.nextInt(3);
+            }
+            double maxX = x - 1;
+            double minX = maxX - span;
+            SeriesSnapshot actual = incremental.decimate(series, minX, maxX, COLUMNS);
+            SeriesSnapshot expected = new PixelDecimator().decimate(series, minX, maxX, COLUMNS);
+            assertEquals(expected.size(), actual.size());
+            for (int i=0; i<expected.size(); i++) {
+                assertEquals(expected.x(i), actual.x(i));
+                assertEquals(expected.y(i), actual.y(i));
+            }
+        }
+    }
+
+    @Test
+    public void reset_discardsOldPoints() {
+        TieredXYSeries series = new TieredXYSeries("test", false);
+        for (int x=0; x<100; x++) {
+            series.add(x, 100);
+        }
+        PixelDecimator decimator = new PixelDecimator();
+        SeriesSnapshot out = decimator.decimate(series, 0.0, 200.0, COLUMNS);
+        assertTrue(out.size() > 0);
+        series.reset();
+        series.add(150, 50);
+        out = decimator.decimate(series, 0.0, 200.0, COLUMNS);
+        assertEquals(1, out.size());
+        assertEquals(150, out.x(0));
+        assertEquals(50, out.y(0));
+    }
+}
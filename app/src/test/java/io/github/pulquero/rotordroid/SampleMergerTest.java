@@ -0,0 +1,108 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SampleMergerTest {
+    @Test
+    public void concurrentNodes_mergeInTimeOrder() throws Exception {
+        int nodes = 8;
+        int samples = 50000;
+        SampleMerger merger = new SampleMerger(nodes, 1024, Integer.MAX_VALUE/2);
+        Recorder recorder = new Recorder();
+        Thread[] lanes = new Thread[nodes];
+        for (int i=0; i<nodes; i++) {
+            int node = i;
+            lanes[i] = new Thread(() -> {
+                Random random = new Random(node);
+                int t = 0;
+                for (int j=0; j<samples; j++) {
+                    t += 1 + random.nextInt(3);
+                    while (!merger.offer(node, t, j % 256)) {
+                        // the test wants every sample, the app drops them
+                        merger.drain(recorder);
+                        Thread.yield();
+                        t++;
+                    }
+                    merger.drain(recorder);
+                }
+            });
+        }
+        for (Thread lane : lanes) {
+            lane.start();
+        }
+        for (Thread lane : lanes) {
+            lane.join();
+        }
+        merger.drain(recorder);
+
+        int[] lastPerNode = new int[nodes];
+        int last = Integer.MIN_VALUE;
+        for (int i=0; i<recorder.times.size(); i++) {
+            int t = recorder.times.get(i);
+            int node = recorder.nodes.get(i);
+            assertTrue("Out of order at " + i, t >= last);
+            assertTrue(t > lastPerNode[node]);
+            last = t;
+            lastPerNode[node] = t;
+        }
+        assertTrue(recorder.watermark >= last);
+        // everything up to the slowest node has been passed on
+        assertTrue(recorder.times.size() >= samples);
+    }
+
+    @Test
+    public void stalledNode_doesNotHoldOthersBack() {
+        SampleMerger merger = new SampleMerger(2, 16, 100);
+        Recorder recorder = new Recorder();
+        merger.offer(1, 0, 50);
+        for (int t=10; t<=200; t+=10) {
+            merger.offer(0, t, 60);
+            merger.drain(recorder);
+        }
+        assertEquals(100, recorder.watermark);
+        // node 1 at 0, then node 0 up to 100
+        assertEquals(11, recorder.times.size());
+        assertEquals(1, (int) recorder.nodes.get(0));
+        assertEquals(100, (int) recorder.times.get(10));
+
+        // a late sample of the stalled node is still passed on
+        merger.offer(1, 50, 70);
+        merger.drain(recorder);
+        assertEquals(12, recorder.times.size());
+        assertEquals(50, (int) recorder.times.get(11));
+    }
+
+    @Test
+    public void fullQueue_dropsNewSamples() {
+        SampleMerger merger = new SampleMerger(2, 4, 1000);
+        for (int t=1; t<=6; t++) {
+            assertEquals(t <= 4, merger.offer(0, t, 0));
+        }
+        assertEquals(2L, merger.getDropped(0));
+        assertEquals(0L, merger.getDropped(1));
+    }
+
+    private static final class Recorder implements SampleMerger.Sink {
+        final List<Integer> nodes = new ArrayList<>();
+        final List<Integer> times = new ArrayList<>();
+        int watermark = Integer.MIN_VALUE;
+
+        @Override
+        public void onSample(int node, int time, int rssi) {
+            nodes.add(node);
+            times.add(time);
+        }
+
+        @Override
+        public void onWatermark(int time) {
+            assertTrue(time > watermark);
+            watermark = time;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class SampleSchedulerTest {
+    private static final long LINK_LATENCY_MS = 2L;
+    private static final long PERIOD_MS = 10L;
+    private static final int SAMPLES = 50;
+
+    @Test
+    public void targetRate_isNotSlowedByRoundTrip() throws Exception {
+        long[] times = new long[SAMPLES];
+        long[] skipped = new long[SAMPLES];
+        AtomicReference<SampleScheduler> samplerRef = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        try (NodeManager nodes = new NodeManager(simulators(1))) {
+            int[] count = new int[1];
+            SampleScheduler sampler = nodes.createSampler(PERIOD_MS, TimeUnit.MILLISECONDS, 0, (index, stats) -> {
+                if (count[0] < SAMPLES) {
+                    times[count[0]] = System.nanoTime();
+                    skipped[count[0]] = samplerRef.get().getSkipped(0);
+                    if (++count[0] == SAMPLES) {
+                        done.countDown();
+                    }
+                }
+            });
+            samplerRef.set(sampler);
+            sampler.start();
+            assertTrue(done.await(10L, TimeUnit.SECONDS));
+            nodes.cancelAll();
+        }
+        // every period is either sampled or counted as skipped, fixed delay polling would lose the round trip each time
+        long periodNanos = TimeUnit.MILLISECONDS.toNanos(PERIOD_MS);
+        for (int i=1; i<SAMPLES; i++) {
+            long elapsed = times[i-1] - times[0];
+            assertTrue("Sample " + i, elapsed < (i + skipped[i])*periodNanos);
+        }
+    }
+
+    @Test
+    public void asFastAsPossible_isLimitedByRoundTrip() throws Exception {
+        long[] times = new long[SAMPLES];
+        CountDownLatch done = new CountDownLatch(1);
+        try (NodeManager nodes = new NodeManager(simulators(1))) {
+            int[] count = new int[1];
+            nodes.sampleAll(0L, TimeUnit.MILLISECONDS, (index, stats) -> {
+                if (count[0] < SAMPLES) {
+                    times[count[0]] = System.nanoTime();
+                    if (++count[0] == SAMPLES) {
+                        done.countDown();
+                    }
+                }
+            });
+            assertTrue(done.await(10L, TimeUnit.SECONDS));
+            nodes.cancelAll();
+        }
+        long latencyNanos = TimeUnit.MILLISECONDS.toNanos(LINK_LATENCY_MS);
+        for (int i=1; i<SAMPLES; i++) {
+            assertTrue("Sample " + i, times[i] - times[i-1] >= latencyNanos);
+        }
+    }
+
+    @Test
+    public void backPressure_throttlesLowPriorityFirst() throws Exception {
+        AtomicIntegerArray counts = new AtomicIntegerArray(2);
+        try (NodeManager nodes = new NodeManager(simulators(2))) {
+            // the consumer never releases its samples
+            SampleScheduler sampler = nodes.createSampler(0L, TimeUnit.MILLISECONDS, 4, (index, stats) -> counts.incrementAndGet(index));
+            sampler.setPriority(0, SampleScheduler.PRIORITY_HIGH);
+            sampler.setPriority(1, SampleScheduler.PRIORITY_LOW);
+            sampler.start();
+            awaitTrue(() -> sampler.getThrottled(0) > 0L && sampler.getThrottled(1) > 0L);
+            assertTrue(counts.get(0) + counts.get(1) <= 4 + 1);
+            assertTrue(counts.get(1) <= 2 + 1);
+            assertTrue(counts.get(0) >= 2);
+
+            for (int i=0; i<4; i++) {
+                sampler.release();
+            }
+            int before = counts.get(0) + counts.get(1);
+            awaitTrue(() -> counts.get(0) + counts.get(1) > before);
+            nodes.cancelAll();
+        }
+    }
+
+    @Test
+    public void pause_stopsDeliveryUntilResumed() throws Exception {
+        AtomicIntegerArray counts = new AtomicIntegerArray(2);
+        try (NodeManager nodes = new NodeManager(simulators(2))) {
+            SampleScheduler sampler = nodes.sampleAll(5L, TimeUnit.MILLISECONDS, (index, stats) -> counts.incrementAndGet(index));
+            awaitTrue(() -> counts.get(0) > 0 && counts.get(1) > 0);
+            sampler.pause();
+            assertFalse(sampler.isRunning());
+            // a sample in flight may still complete
+            drainLanes(nodes);
+            int paused = counts.get(0) + counts.get(1);
+            Thread.sleep(100L);
+            drainLanes(nodes);
+            assertEquals(paused, counts.get(0) + counts.get(1));
+
+            sampler.resume();
+            awaitTrue(() -> counts.get(0) + counts.get(1) > paused + 20);
+            nodes.cancelAll();
+            assertFalse(sampler.isRunning());
+        }
+    }
+
+    /**
+     * Waits for whatever is already queued on every lane.
+     */
+    private static void drainLanes(NodeManager nodes) throws Exception {
+        for (int i=0; i<nodes.size(); i++) {
+            nodes.submit(i, (index, node) -> {}).get();
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.nanoTime() - deadline < 0L);
+            Thread.sleep(1L);
+        }
+    }
+
+    private static List<Transport> simulators(int count) {
+        List<Transport> transports = new ArrayList<>();
+        for (int i=0; i<count; i++) {
+            transports.add(new NodeSimulator(i).setLatency(LINK_LATENCY_MS, 0L, TimeUnit.MILLISECONDS));
+        }
+        return transports;
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SeriesConcurrencyTest {
+    private static final int CAPACITY = 200;
+    private static final int NUM_READERS = 3;
+    private static final long RUN_TIME_MS = 1000L;
+
+    @Test
+    public void circularSeries_snapshotsAreNeverTorn() throws Exception {
+        CircularXYSeries series = new CircularXYSeries("test", CAPACITY);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> error = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            int x = 0;
+            while (running.get()) {
+                x++;
+                // y is derived from x so a torn point shows up as a mismatch
+                series.add(x, -x);
+                if (x % 1000 == 0) {
+                    series.reset();
+                }
+            }
+        });
+        List<Thread> readers = new ArrayList<>();
+        for (int r=0; r<NUM_READERS; r++) {
+            readers.add(new Thread(() -> {
+                SeriesSnapshot snapshot = new SeriesSnapshot();
+                while (running.get()) {
+                    series.snapshot(snapshot);
+                    String msg = checkConsecutive(snapshot);
+                    if (msg != null) {
+                        error.compareAndSet(null, msg);
+                    }
+                }
+            }));
+        }
+        runAll(writer, readers, running);
+        assertNull(error.get(), error.get());
+    }
+
+    @Test
+    public void fixedSeries_snapshotsSeeWholeFills() throws Exception {
+        int size = 301;
+        FixedXYSeries series = new FixedXYSeries("test", 5645, 1, size);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> error = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            int y = 0;
+            while (running.get()) {
+                y++;
+                series.fill(5645, 5945, y);
+            }
+        });
+        List<Thread> readers = new ArrayList<>();
+        for (int r=0; r<NUM_READERS; r++) {
+            readers.add(new Thread(() -> {
+                SeriesSnapshot snapshot = new SeriesSnapshot();
+                while (running.get()) {
+                    series.snapshot(snapshot);
+                    for (int i=1; i<snapshot.size(); i++) {
+                        if (snapshot.y(i) != snapshot.y(0) || snapshot.x(i) != 5645 + i) {
+                            error.compareAndSet(null, "Torn fill at " + i);
+                        }
+                    }
+                }
+            }));
+        }
+        runAll(writer, readers, running);
+        assertNull(error.get(), error.get());
+    }
+
+    private static String checkConsecutive(SeriesSnapshot snapshot) {
+        if (snapshot.size() > CAPACITY) {
+            return "Size " + snapshot.size();
+        }
+        for (int i=0; i<snapshot.size(); i++) {
+            if (snapshot.y(i) != -snapshot.x(i)) {
+                return "Torn point at " + i;
+            }
+            if (i > 0 && snapshot.x(i) != snapshot.x(i-1) + 1) {
+                return "Out of order at " + i;
+            }
+        }
+        return null;
+    }
+
+    private static void runAll(Thread writer, List<Thread> readers, AtomicBoolean running) throws InterruptedException {
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        Thread.sleep(RUN_TIME_MS);
+        running.set(false);
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+    }
+}
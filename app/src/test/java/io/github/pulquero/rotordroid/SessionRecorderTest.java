@@ -0,0 +1,135 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class SessionRecorderTest {
+    private static final int NODES = 4;
+    private static final int SAMPLES = 200000;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("session", ".rhs");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + SessionRecorder.INDEX_SUFFIX).delete();
+    }
+
+    @Test
+    public void recording_replaysEverySample() throws IOException {
+        LapStats stats = new LapStats();
+        try (SessionRecorder recorder = SessionRecorder.create(file)) {
+            for (int i=0; i<SAMPLES; i++) {
+                sample(i, stats);
+                recorder.record(i % NODES, 5658 + i % NODES, stats);
+            }
+        }
+
+        LapStats expected = new LapStats();
+        try (SessionReader reader = new SessionReader(file)) {
+            assertEquals(NODES, reader.nodeCount());
+            SessionReader.Cursor cursor = reader.seek(0);
+            for (int i=0; i<SAMPLES; i++) {
+                sample(i, expected);
+                assertEquals(i % NODES, cursor.next(stats));
+                assertEquals(5658 + i % NODES, cursor.frequency());
+                assertSample(expected, stats);
+            }
+            assertEquals(-1, cursor.next(stats));
+        }
+        // a few bytes per field instead of the 60 of a raw sample
+        assertTrue(file.length() < SAMPLES * 20);
+    }
+
+    @Test
+    public void seek_findsFirstSampleAtOrAfterTime() throws IOException {
+        LapStats stats = new LapStats();
+        try (SessionRecorder recorder = SessionRecorder.create(file)) {
+            for (int i=0; i<SAMPLES; i++) {
+                sample(i, stats);
+                recorder.record(i % NODES, 5800, stats);
+            }
+        }
+
+        LapStats expected = new LapStats();
+        try (SessionReader reader = new SessionReader(file)) {
+            for (int i : new int[] {0, 1, 999, 2000, 12345, SAMPLES/2 + 7, SAMPLES - 1}) {
+                // two samples per millisecond, so the first match is the even one
+                int first = i - i % 2;
+                sample(first, expected);
+                assertEquals(first % NODES, reader.seek(expected.t).next(stats));
+                assertSample(expected, stats);
+            }
+            assertEquals(-1, reader.seek(SAMPLES/2).next(stats));
+        }
+    }
+
+    @Test
+    public void replayTransport_answersLikeANode() throws IOException {
+        LapStats stats = new LapStats();
+        try (SessionRecorder recorder = SessionRecorder.create(file)) {
+            for (int i=0; i<100; i++) {
+                sample(i, stats);
+                // far enough apart that the replay clock is still on the first one
+                stats.t = i*60000;
+                recorder.record(0, 5732, stats);
+            }
+        }
+
+        try (SessionReader reader = new SessionReader(file)) {
+            Node node = new Node(new ReplayTransport(reader, 0, 1.0));
+            assertEquals(5732, node.getFrequency());
+            node.readLapStats(0, stats);
+            LapStats expected = new LapStats();
+            sample(0, expected);
+            assertEquals(expected.laps, stats.laps);
+            assertEquals(expected.rssi, stats.rssi);
+            assertEquals(expected.peakRssi, stats.peakRssi);
+        }
+    }
+
+    private static void sample(int i, LapStats stats) {
+        stats.t = i/2;
+        stats.laps = i/5000;
+        stats.msSinceLastLap = i % 5000;
+        stats.rssi = 40 + (i*7919) % 60;
+        stats.peakRssi = 100;
+        stats.lastPassPeak = 95;
+        stats.loopTimeMicros = 1000 + i % 3;
+        stats.flags = 0;
+        stats.lastPassNadir = 30;
+        stats.nadirRssi = 35;
+        stats.historyRssi = stats.rssi;
+        stats.msSinceHistoryStart = 20;
+        stats.msSinceHistoryEnd = 10;
+        stats.lapTime = stats.laps*2500 - 3;
+    }
+
+    private static void assertSample(LapStats expected, LapStats actual) {
+        assertEquals(expected.t, actual.t);
+        assertEquals(expected.laps, actual.laps);
+        assertEquals(expected.msSinceLastLap, actual.msSinceLastLap);
+        assertEquals(expected.rssi, actual.rssi);
+        assertEquals(expected.peakRssi, actual.peakRssi);
+        assertEquals(expected.lastPassPeak, actual.lastPassPeak);
+        assertEquals(expected.loopTimeMicros, actual.loopTimeMicros);
+        assertEquals(expected.flags, actual.flags);
+        assertEquals(expected.lastPassNadir, actual.lastPassNadir);
+        assertEquals(expected.nadirRssi, actual.nadirRssi);
+        assertEquals(expected.historyRssi, actual.historyRssi);
+        assertEquals(expected.msSinceHistoryStart, actual.msSinceHistoryStart);
+        assertEquals(expected.msSinceHistoryEnd, actual.msSinceHistoryEnd);
+        assertEquals(expected.lapTime, actual.lapTime);
+    }
+}
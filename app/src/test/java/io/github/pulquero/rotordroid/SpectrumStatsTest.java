@@ -0,0 +1,70 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SpectrumStatsTest {
+    @Test
+    public void windowedStats_matchBruteForce() {
+        int window = 5;
+        SpectrumStats stats = new SpectrumStats(5800, 5801, 2*window);
+        Random rnd = new Random(42L);
+        List<long[]> samples = new ArrayList<>();
+        for (long sweep=0L; sweep<200L; sweep++) {
+            stats.expireAll(sweep - window + 1);
+            int n = 1 + rnd.nextInt(2);
+            for (int i=0; i<n; i++) {
+                int rssi = rnd.nextInt(150);
+                stats.add(5800, rssi, sweep);
+                samples.add(new long[] {sweep, rssi});
+            }
+            List<Integer> expected = new ArrayList<>();
+            long sum = 0L;
+            for (long[] sample : samples) {
+                if (sample[0] > sweep - window) {
+                    expected.add((int) sample[1]);
+                    sum += sample[1];
+                }
+            }
+            Collections.sort(expected);
+            assertEquals(expected.size(), stats.count(5800));
+            assertEquals((int) expected.get(0), stats.min(5800));
+            assertEquals((int) expected.get(expected.size()-1), stats.max(5800));
+            assertEquals((double) sum/expected.size(), stats.mean(5800), 1e-9);
+            int rank = (int) Math.ceil(0.95*expected.size());
+            assertEquals((int) expected.get(rank-1), stats.percentile(5800, 95.0));
+        }
+        assertEquals(0, stats.count(5801));
+    }
+
+    @Test
+    public void zeroReading_isAValue() {
+        SpectrumStats stats = new SpectrumStats(5800, 5800, 4);
+        stats.add(5800, 20, 0L);
+        stats.add(5800, 0, 0L);
+        assertEquals(0, stats.min(5800));
+        assertEquals(20, stats.max(5800));
+        stats.expireAll(1L);
+        assertEquals(0, stats.count(5800));
+    }
+
+    @Test
+    public void fullWindow_evictsOldest() {
+        SpectrumStats stats = new SpectrumStats(5800, 5800, 3);
+        stats.add(5800, 100, 0L);
+        stats.add(5800, 10, 0L);
+        stats.add(5800, 50, 0L);
+        stats.add(5800, 60, 0L);
+        assertEquals(3, stats.count(5800));
+        assertEquals(60, stats.max(5800));
+        assertEquals(10, stats.min(5800));
+        stats.add(5800, 70, 0L);
+        assertEquals(50, stats.min(5800));
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SpectrumSweepTest {
+    private static final int MIN_FREQ = 5645;
+    private static final int MAX_FREQ = 5945;
+    private static final int LAP_MILLIS = 60000;
+
+    @Test
+    public void sweep_coversBandCoarseThenFine() throws Exception {
+        int[] pilots = {SpectrumSweep.RACE_CHANNELS[1], SpectrumSweep.RACE_CHANNELS[5]};
+        List<Transport> transports = new ArrayList<>();
+        for (int i=0; i<4; i++) {
+            // passes are well after the first sweep, so the pilots are seen at a steady level
+            transports.add(new NodeSimulator(i)
+                    .addPilot(pilots[0], LAP_MILLIS, LAP_MILLIS/2)
+                    .addPilot(pilots[1], LAP_MILLIS, LAP_MILLIS/2)
+                    .setNoise(0.5)
+                    .setLatency(2L, 0L, TimeUnit.MILLISECONDS));
+        }
+        boolean[] covered = new boolean[MAX_FREQ - MIN_FREQ + 1];
+        int[] spectrum = new int[MAX_FREQ - MIN_FREQ + 1];
+        int[] fineSamples = new int[1];
+        boolean[] coarseAfterFine = new boolean[1];
+        boolean[] firstSweep = {true};
+        CountDownLatch done = new CountDownLatch(1);
+        try (NodeManager nodes = new NodeManager(transports)) {
+            new SpectrumSweep(nodes, MIN_FREQ, MAX_FREQ, new SpectrumSweep.Listener() {
+                @Override
+                public void onSample(int index, int freq, int span, int rssi) {
+                    synchronized (covered) {
+                        if (!firstSweep[0]) {
+                            return;
+                        }
+                        if (span > 1 && fineSamples[0] > 0) {
+                            coarseAfterFine[0] = true;
+                        }
+                        for (int f=freq; f<Math.min(freq + span, MAX_FREQ + 1); f++) {
+                            covered[f - MIN_FREQ] = true;
+                            spectrum[f - MIN_FREQ] = rssi;
+                        }
+                        if (span == 1) {
+                            fineSamples[0]++;
+                        }
+                    }
+                }
+
+                @Override
+                public void onSweepComplete(long durationMs) {
+                    synchronized (covered) {
+                        firstSweep[0] = false;
+                    }
+                    done.countDown();
+                }
+            }).start();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            nodes.cancelAll();
+        }
+        synchronized (covered) {
+            for (int i=0; i<covered.length; i++) {
+                assertTrue("Missed " + (MIN_FREQ + i), covered[i]);
+            }
+            assertTrue(fineSamples[0] >= SpectrumSweep.RACE_CHANNELS.length);
+            assertFalse(coarseAfterFine[0]);
+            for (int pilot : pilots) {
+                int f = pilot - MIN_FREQ;
+                assertTrue("No signal at " + pilot, spectrum[f] > 50);
+                assertTrue(spectrum[f] > spectrum[f - 12] + 15);
+                assertTrue(spectrum[f] > spectrum[f + 12] + 15);
+            }
+        }
+    }
+}
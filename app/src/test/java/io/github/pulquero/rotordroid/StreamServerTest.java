@@ -0,0 +1,146 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StreamServerTest {
+    private static final int MESSAGES = 20000;
+
+    @Test
+    public void localhost_deliversSamplesAndLapsInOrder() throws Exception {
+        try (StreamServer server = new StreamServer(InetAddress.getLoopbackAddress(), 0);
+             StreamClient client = new StreamClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+            subscribe(server, client);
+            Receiver receiver = new Receiver();
+            for (int i=0; i<MESSAGES; i++) {
+                server.publishSample(i % 4, i, 5800 + i % 4, i % 256);
+                if (i % 1000 == 999) {
+                    server.publishLap(1, i/1000, i, 20000, 120);
+                }
+                // keep within the queue capacity
+                if (i % 500 == 499) {
+                    while (receiver.samples <= i && client.receive(1000, receiver)) {
+                    }
+                }
+            }
+            assertEquals(0L, server.getDropped());
+            assertEquals(0L, client.getLostDatagrams());
+            assertEquals(MESSAGES, receiver.samples);
+            assertEquals(MESSAGES/1000, receiver.laps);
+        }
+    }
+
+    @Test
+    public void latency_isWithinAFewFlushIntervals() throws Exception {
+        try (StreamServer server = new StreamServer(InetAddress.getLoopbackAddress(), 0);
+             StreamClient client = new StreamClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+            subscribe(server, client);
+            Receiver receiver = new Receiver();
+            long start = System.nanoTime();
+            server.publishLap(2, 7, 12345, 19876, 110);
+            assertTrue(client.receive(1000, receiver));
+            long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("Latency " + latencyMs + " ms", latencyMs < 100L);
+            assertEquals(1, receiver.laps);
+            assertEquals(2, receiver.lastNode);
+            assertEquals(7, receiver.lastLap);
+            assertEquals(12345, receiver.lastTime);
+            assertEquals(19876, receiver.lastLapMillis);
+            assertEquals(110, receiver.lastRssi);
+        }
+    }
+
+    @Test
+    public void slowClient_dropsInsteadOfBlocking() throws Exception {
+        try (StreamServer server = new StreamServer(InetAddress.getLoopbackAddress(), 0);
+             StreamClient client = new StreamClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+            subscribe(server, client);
+            long start = System.nanoTime();
+            for (int i=0; i<1000000; i++) {
+                server.publishSample(0, i, 5800, 100);
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("Publishing took " + elapsedMs + " ms", elapsedMs < 2000L);
+            assertTrue(server.getDropped() > 0L);
+        }
+    }
+
+    @Test
+    public void unconfirmedSubscribe_isNotServed() throws Exception {
+        try (StreamServer server = new StreamServer(InetAddress.getLoopbackAddress(), 0);
+             DatagramSocket socket = new DatagramSocket()) {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+            byte[] request = {StreamServer.MAGIC_0, StreamServer.MAGIC_1, StreamServer.VERSION, StreamServer.TYPE_SUBSCRIBE, 0, 0, 0, 0, 0, 0, 0, 0};
+            socket.send(new DatagramPacket(request, request.length, address));
+            // answered with a challenge no larger than the request
+            byte[] rxBuf = new byte[StreamServer.MAX_DATAGRAM_SIZE];
+            DatagramPacket answer = new DatagramPacket(rxBuf, rxBuf.length);
+            socket.setSoTimeout(1000);
+            socket.receive(answer);
+            assertEquals(request.length, answer.getLength());
+            assertEquals(StreamServer.TYPE_CHALLENGE, rxBuf[3]);
+
+            // a guessed nonce
+            request[3] = StreamServer.TYPE_CONFIRM;
+            request[4] = (byte) (rxBuf[4] + 1);
+            socket.send(new DatagramPacket(request, request.length, address));
+            // too short, ignored
+            socket.send(new DatagramPacket(request, 4, address));
+            Thread.sleep(100L);
+            assertEquals(0, server.getClientCount());
+
+            System.arraycopy(rxBuf, 4, request, 4, StreamServer.NONCE_SIZE);
+            socket.send(new DatagramPacket(request, request.length, address));
+            for (int i=0; i<100 && server.getClientCount() == 0; i++) {
+                Thread.sleep(10L);
+            }
+            assertEquals(1, server.getClientCount());
+        }
+    }
+
+    private static void subscribe(StreamServer server, StreamClient client) throws Exception {
+        client.subscribe(1000);
+        for (int i=0; i<100 && server.getClientCount() == 0; i++) {
+            Thread.sleep(10L);
+        }
+        assertEquals(1, server.getClientCount());
+    }
+
+    private static final class Receiver implements StreamClient.Listener {
+        int samples;
+        int laps;
+        int nextTime;
+        int lastNode;
+        int lastLap;
+        int lastTime;
+        int lastLapMillis;
+        int lastRssi;
+
+        @Override
+        public void onSample(int node, int time, int freq, int rssi) {
+            assertEquals(nextTime, time);
+            assertEquals(time % 4, node);
+            assertEquals(5800 + time % 4, freq);
+            assertEquals(time % 256, rssi);
+            nextTime++;
+            samples++;
+        }
+
+        @Override
+        public void onLap(int node, int lap, int time, int lapMillis, int peakRssi) {
+            laps++;
+            lastNode = node;
+            lastLap = lap;
+            lastTime = time;
+            lastLapMillis = lapMillis;
+            lastRssi = peakRssi;
+        }
+    }
+}
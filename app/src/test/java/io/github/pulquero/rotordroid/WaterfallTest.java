@@ -0,0 +1,53 @@
+package io.github.pulquero.rotordroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class WaterfallTest {
+    @Test
+    public void palette_isClampedOutsideTheRange() {
+        int[] palette = Waterfall.createPalette(10, 150);
+        assertEquals(0xFF000000, palette[0]);
+        assertEquals(0xFF000000, palette[10]);
+        assertEquals(0xFF0000FF, palette[38]);
+        assertEquals(0xFFFFFFFF, palette[150]);
+        assertEquals(0xFFFFFFFF, palette[255]);
+    }
+
+    @Test
+    public void drainTo_passesOnNewRowsNewestAtTheTop() {
+        Waterfall waterfall = new Waterfall(2, 4, 0, 3);
+        waterfall.addSweep(new int[] {0, 0});
+        waterfall.addSweep(new int[] {3, 3});
+        List<Integer> rows = new ArrayList<>();
+        long drained = waterfall.drainTo(0L, (pixels, offset, row) -> rows.add(row));
+        assertEquals(2L, drained);
+        assertEquals(3, (int) rows.get(0));
+        assertEquals(2, (int) rows.get(1));
+
+        waterfall.addSweep(new int[] {1, 1});
+        List<Integer> colours = new ArrayList<>();
+        drained = waterfall.drainTo(drained, (pixels, offset, row) -> colours.add(pixels[offset]));
+        assertEquals(3L, drained);
+        assertEquals(1, colours.size());
+        assertEquals(Waterfall.createPalette(0, 3)[1], (int) colours.get(0));
+    }
+
+    @Test
+    public void drainTo_skipsOverwrittenRows() {
+        Waterfall waterfall = new Waterfall(1, 3, 0, 100);
+        for (int i=0; i<10; i++) {
+            waterfall.addSweep(new int[] {i});
+        }
+        List<Integer> rows = new ArrayList<>();
+        assertEquals(10L, waterfall.drainTo(0L, (pixels, offset, row) -> rows.add(row)));
+        assertEquals(3, rows.size());
+        // sweep 9 is the newest
+        assertEquals(2, waterfall.row(9L));
+        assertEquals(2, (int) rows.get(2));
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.pulquero.rotordroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sample to series path against a simulated node answering instantly,
+ * so only the cost on the phone side is measured.
+ */
+@State(Scope.Thread)
+public class AcquisitionBenchmark {
+    private static final int NUM_SAMPLES = 200;
+
+    private final NodeSimulator.VirtualClock clock = new NodeSimulator.VirtualClock();
+    private final LapStats stats = new LapStats();
+    private Node node;
+    private CircularXYSeries historySeries;
+    private TieredXYSeries rssiSeries;
+    private int time;
+
+    @Setup
+    public void setUp() {
+        node = new Node(new NodeSimulator(0L, clock).addPilot(5800, 10000, 0));
+        historySeries = new CircularXYSeries("History", NUM_SAMPLES);
+        rssiSeries = new TieredXYSeries("RSSI", false);
+    }
+
+    @Benchmark
+    public int readLapStats() throws IOException {
+        return node.readLapStats(time++, stats).rssi;
+    }
+
+    @Benchmark
+    public int sampleToSeries() throws IOException {
+        node.readLapStats(time++, stats);
+        rssiSeries.add(stats.t, stats.rssi);
+        historySeries.add(stats.t - stats.msSinceHistoryStart, stats.historyRssi);
+        return stats.rssi;
+    }
+
+    /**
+     * Includes simulating a millisecond of the node loop per sample.
+     */
+    @Benchmark
+    public int sampleToSeriesSimulated() throws IOException {
+        clock.advance(1000000L);
+        return sampleToSeries();
+    }
+
+    /**
+     * One read from every node, each on its own lane, over a link with a realistic latency.
+     * The rounds per second should stay about the same as nodes are added.
+     */
+    @Benchmark
+    public void readAllLanes(Lanes lanes) throws Exception {
+        for (int i=0; i<lanes.nodeCount; i++) {
+            lanes.futures[i] = lanes.nodes.submit(i, (index, n) -> n.readLapStats(0, lanes.stats[index]));
+        }
+        for (int i=0; i<lanes.nodeCount; i++) {
+            lanes.futures[i].get();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Lanes {
+        private static final long LINK_LATENCY_MS = 2L;
+
+        @Param({"1", "2", "4"})
+        int nodeCount;
+        NodeManager nodes;
+        LapStats[] stats;
+        Future<?>[] futures;
+
+        @Setup
+        public void setUp() {
+            List<Transport> transports = new ArrayList<>();
+            stats = new LapStats[nodeCount];
+            for (int i=0; i<nodeCount; i++) {
+                transports.add(new NodeSimulator(i).setLatency(LINK_LATENCY_MS, 0L, TimeUnit.MILLISECONDS));
+                stats[i] = new LapStats();
+            }
+            nodes = new NodeManager(transports);
+            futures = new Future<?>[nodeCount];
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            nodes.close();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.pulquero.rotordroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class CodecBenchmark {
+    private final byte[] buf = new byte[Node.LAP_STATS_SIZE+1];
+    private final LapStats stats = new LapStats();
+    private int value;
+
+    @Setup
+    public void setUp() {
+        LapStats sample = new LapStats();
+        sample.laps = 3;
+        sample.msSinceLastLap = 1234;
+        sample.rssi = 70;
+        sample.peakRssi = 110;
+        sample.lastPassPeak = 105;
+        sample.loopTimeMicros = 1000;
+        sample.nadirRssi = 30;
+        Node.encodeLapStats(sample, buf, 0);
+    }
+
+    @Benchmark
+    public int read16() {
+        return Node.read16(buf, 1);
+    }
+
+    @Benchmark
+    public int write16() {
+        return Node.write16(buf, 1, value++);
+    }
+
+    @Benchmark
+    public byte checksum() {
+        return Node.calculateChecksum(buf, 0, Node.LAP_STATS_SIZE);
+    }
+
+    @Benchmark
+    public int decodeLapStats() {
+        Node.decodeLapStats(buf, 0, value++, 2000000L, stats);
+        return stats.rssi;
+    }
+}
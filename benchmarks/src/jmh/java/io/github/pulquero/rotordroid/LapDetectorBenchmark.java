@@ -0,0 +1,43 @@
+package io.github.pulquero.rotordroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Samples interleaved across the nodes, with a pass every couple of seconds.
+ * Real time for 8 nodes at 1 kHz is 8000 samples/s.
+ */
+@State(Scope.Thread)
+public class LapDetectorBenchmark {
+    private static final int ENTER_AT = 90;
+    private static final int EXIT_AT = 80;
+    private static final int MIN_LAP_MILLIS = 1000;
+    private static final int LAP_MILLIS = 2000;
+
+    @Param({"1", "8"})
+    int nodeCount;
+    private final LapStats stats = new LapStats();
+    private LapDetector[] detectors;
+    private int time;
+
+    @Setup
+    public void setUp() {
+        detectors = new LapDetector[nodeCount];
+        for (int i=0; i<nodeCount; i++) {
+            detectors[i] = new LapDetector(i, ENTER_AT, EXIT_AT, MIN_LAP_MILLIS, (index, lap, t, lapMillis, peakRssi) -> {});
+        }
+    }
+
+    @Benchmark
+    public int onSample() {
+        int t = time++;
+        stats.t = t;
+        stats.rssi = 60 + (t % LAP_MILLIS < 100 ? 40 : 0);
+        LapDetector detector = detectors[t % nodeCount];
+        detector.onSample(stats);
+        return detector.getLaps();
+    }
+}
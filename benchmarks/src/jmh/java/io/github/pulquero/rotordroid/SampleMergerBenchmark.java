@@ -0,0 +1,53 @@
+package io.github.pulquero.rotordroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A sample offered in turn by each node, each followed by a drain as the lanes do.
+ * Real time for 8 nodes at 1 kHz is 8000 samples/s.
+ */
+@State(Scope.Thread)
+public class SampleMergerBenchmark {
+    private static final int CAPACITY = 1024;
+    private static final int MAX_SKEW = 500;
+
+    @Param({"1", "8"})
+    int nodeCount;
+    private SampleMerger merger;
+    private final Counter counter = new Counter();
+    private int node;
+    private int time;
+
+    @Setup
+    public void setUp() {
+        merger = new SampleMerger(nodeCount, CAPACITY, MAX_SKEW);
+    }
+
+    @Benchmark
+    public long offerAndDrain() {
+        merger.offer(node, time, time & 0xFF);
+        merger.drain(counter);
+        if (++node == nodeCount) {
+            node = 0;
+            time++;
+        }
+        return counter.samples;
+    }
+
+    private static final class Counter implements SampleMerger.Sink {
+        long samples;
+
+        @Override
+        public void onSample(int node, int time, int rssi) {
+            samples++;
+        }
+
+        @Override
+        public void onWatermark(int time) {
+        }
+    }
+}
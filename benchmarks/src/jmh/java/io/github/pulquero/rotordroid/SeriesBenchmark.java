@@ -0,0 +1,93 @@
+package io.github.pulquero.rotordroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class SeriesBenchmark {
+    private static final int MIN_FREQ = 5645;
+    private static final int MAX_FREQ = 5945;
+    private static final int COLUMNS = 1000;
+
+    @Param({"200", "5000"})
+    public int size;
+
+    private CircularXYSeries circular;
+    private FixedXYSeries fixed;
+    private TieredXYSeries tiered;
+    private final PixelDecimator decimator = new PixelDecimator();
+    private final SeriesSnapshot snapshot = new SeriesSnapshot();
+    private int x;
+
+    @Setup
+    public void setUp() {
+        circular = new CircularXYSeries("circular", size);
+        for (int i=0; i<size; i++) {
+            circular.add(i, i);
+        }
+        fixed = new FixedXYSeries("fixed", MIN_FREQ, 1, MAX_FREQ - MIN_FREQ + 1);
+        tiered = new TieredXYSeries("tiered", true);
+        for (int i=0; i<size; i++) {
+            tiered.add(i, i);
+        }
+    }
+
+    @Benchmark
+    public void circularAdd() {
+        circular.add(x, x++);
+    }
+
+    @Benchmark
+    public Number circularGetX() {
+        x++;
+        if (x >= size) {
+            x = 0;
+        }
+        return circular.getX(x);
+    }
+
+    @Benchmark
+    public SeriesSnapshot circularSnapshot() {
+        circular.snapshot(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * A live trace following the latest sample, as the renderer reads it without decimation.
+     */
+    @Benchmark
+    public SeriesSnapshot tieredScrollSnapshot() {
+        int t = size + x++;
+        tiered.add(t, t);
+        tiered.snapshot(snapshot, t - size, t, TieredXYSeries.RAW_CAPACITY);
+        return snapshot;
+    }
+
+    @Benchmark
+    public SeriesSnapshot tieredScrollDecimate() {
+        int t = size + x++;
+        tiered.add(t, t);
+        return decimator.decimate(tiered, t - size, t, COLUMNS);
+    }
+
+    @Benchmark
+    public void fixedSet() {
+        x++;
+        if (x > MAX_FREQ - MIN_FREQ) {
+            x = 0;
+        }
+        fixed.set(MIN_FREQ + x, x);
+    }
+
+    @Benchmark
+    public int fixedAt() {
+        x++;
+        if (x > MAX_FREQ - MIN_FREQ) {
+            x = 0;
+        }
+        return fixed.at(MIN_FREQ + x);
+    }
+}